@@ -0,0 +1,199 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: On-disk cache of {@link AnalysisResult}s, keyed by the SHA-256 of the APK together with the
+ * configuration of the analysis, so that an unchanged APK analyzed the same way skips Soot entirely.
+ * <p>
+ * Each result is stored in {@code <directory>/<key>.bin} as a signature dictionary followed by the entry
+ * points, targets and paths as indices into that dictionary, and whether the result is truncated.
+ */
+public class AnalysisCache {
+    private static final String TAG = AnalysisCache.class.getSimpleName();
+
+    private static final int MAGIC = 0x41525343;   // "ARSC"
+    private static final int VERSION = 2;
+
+    private final File directory;
+
+    public AnalysisCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Method: hashOf
+     * Description: Hash the content of the APK.
+     * @param apk the APK file
+     * @return the hex SHA-256 of the APK
+     * @throws IOException if the APK cannot be read
+     */
+    public static String hashOf(File apk) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(apk)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Method: keyOf
+     * Description: Hash the APK hash and the configuration of the analysis into a cache key.
+     * @param apkHash the hash of the APK, see hashOf()
+     * @param configuration everything besides the APK that the result depends on
+     * @return the hex SHA-256 key
+     */
+    public static String keyOf(String apkHash, String configuration) {
+        MessageDigest digest = newDigest();
+        digest.update(apkHash.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + ".bin");
+    }
+
+    /**
+     * Returns the cached result for {@code key}, and {@code null} on a miss or an unreadable entry.
+     */
+    public AnalysisResult get(String key) {
+        File file = fileOf(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+                return null;
+            }
+
+            String[] signatures = new String[in.readInt()];
+            for (int i = 0; i < signatures.length; i++) {
+                signatures[i] = in.readUTF();
+            }
+            List<String> entryPoints = readSignatures(in, signatures);
+            List<String> targets = readSignatures(in, signatures);
+            int n = in.readInt();
+            List<List<String>> paths = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                paths.add(readSignatures(in, signatures));
+            }
+
+            return new AnalysisResult(entryPoints, targets, paths, in.readBoolean());
+        } catch (IOException | RuntimeException e) {
+            Log.warn(TAG, "Ignoring unreadable cache entry %s: %s", file, e);
+            return null;
+        }
+    }
+
+    private static List<String> readSignatures(DataInputStream in, String[] signatures) throws IOException {
+        int n = in.readInt();
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = signatures[in.readInt()];
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Stores {@code result} under {@code key}; failures are logged, as the cache is only an optimization.
+     */
+    public void put(String key, AnalysisResult result) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.warn(TAG, "Cannot create cache directory %s", directory);
+            return;
+        }
+
+        // Number every signature once
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> signatures = new ArrayList<>();
+        List<List<String>> all = new ArrayList<>(result.getPaths());
+        all.add(result.getEntryPoints());
+        all.add(result.getTargets());
+        for (List<String> list : all) {
+            for (String signature : list) {
+                if (!ids.containsKey(signature)) {
+                    ids.put(signature, signatures.size());
+                    signatures.add(signature);
+                }
+            }
+        }
+
+        File file = fileOf(key);
+        File tmp = new File(directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(signatures.size());
+            for (String signature : signatures) {
+                out.writeUTF(signature);
+            }
+            writeSignatures(out, result.getEntryPoints(), ids);
+            writeSignatures(out, result.getTargets(), ids);
+            out.writeInt(result.getPaths().size());
+            for (List<String> path : result.getPaths()) {
+                writeSignatures(out, path, ids);
+            }
+            out.writeBoolean(result.isTruncated());
+        } catch (IOException e) {
+            Log.warn(TAG, "Cannot write cache entry %s: %s", file, e);
+            tmp.delete();
+            return;
+        }
+
+        file.delete();
+        if (!tmp.renameTo(file)) {
+            Log.warn(TAG, "Cannot write cache entry %s", file);
+            tmp.delete();
+        }
+    }
+
+    private static void writeSignatures(DataOutputStream out, List<String> list, Map<String, Integer> ids)
+            throws IOException {
+        out.writeInt(list.size());
+        for (String signature : list) {
+            out.writeInt(ids.get(signature));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package fu.hao.acteve.instrumentor;
+
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Description: The result of analyzing one APK, i.e. its lifecycle entry points, the reachable target methods
+ * and the paths from the former to the latter, all as method signatures so that it outlives the Scene.
+ * A result is truncated if the path enumeration of an entry point stopped at its caps, i.e. there are more paths.
+ */
+public class AnalysisResult {
+    private final List<String> entryPoints;
+    private final List<String> targets;
+    private final List<List<String>> paths;
+    private final boolean truncated;
+
+    public AnalysisResult(List<String> entryPoints, List<String> targets, List<List<String>> paths) {
+        this(entryPoints, targets, paths, false);
+    }
+
+    public AnalysisResult(List<String> entryPoints, List<String> targets, List<List<String>> paths,
+                          boolean truncated) {
+        this.entryPoints = Collections.unmodifiableList(entryPoints);
+        this.targets = Collections.unmodifiableList(targets);
+        this.paths = Collections.unmodifiableList(paths);
+        this.truncated = truncated;
+    }
+
+    public static AnalysisResult of(Collection<SootMethod> entryPoints, Collection<SootMethod> targets,
+                                    List<List<SootMethod>> paths, boolean truncated) {
+        List<List<String>> pathSignatures = new ArrayList<>(paths.size());
+        for (List<SootMethod> path : paths) {
+            pathSignatures.add(signaturesOf(path));
+        }
+        return new AnalysisResult(sortedSignaturesOf(entryPoints), sortedSignaturesOf(targets), pathSignatures,
+                truncated);
+    }
+
+    static List<String> signaturesOf(Collection<SootMethod> methods) {
+        List<String> signatures = new ArrayList<>(methods.size());
+        for (SootMethod method : methods) {
+            signatures.add(method.getSignature());
+        }
+        return signatures;
+    }
+
+    /**
+     * Returns the signatures of a set of methods, sorted, so that reruns write them in the same order
+     * whatever the order of the set.
+     */
+    public static List<String> sortedSignaturesOf(Collection<SootMethod> methods) {
+        List<String> signatures = signaturesOf(methods);
+        Collections.sort(signatures);
+        return signatures;
+    }
+
+    /**
+     * Returns the sub-signature of a method signature, e.g. "void f(int)" for "&lt;a.B: void f(int)&gt;".
+     */
+    public static String subSignatureOf(String signature) {
+        return signature.substring(signature.indexOf(": ") + 2, signature.length() - 1);
+    }
+
+    public List<String> getEntryPoints() {
+        return entryPoints;
+    }
+
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    public List<List<String>> getPaths() {
+        return paths;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
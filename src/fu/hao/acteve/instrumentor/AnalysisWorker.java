@@ -0,0 +1,53 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Settings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Description: Worker process of the {@link WorkerPool}. Reads one APK path per line from stdin, runs
+ * {@link Main#analyze(String)} on it and answers with one result line on stdout, i.e.
+ * <pre>
+ *     @@RESULT&lt;TAB&gt;apk&lt;TAB&gt;status&lt;TAB&gt;entries&lt;TAB&gt;targets&lt;TAB&gt;paths&lt;TAB&gt;millis&lt;TAB&gt;message
+ * </pre>
+ * Everything else Soot and the logger print to stdout is ignored by the pool. Worker {@code i} logs to
+ * {@code analysis-i.log}, so that the workers of a pool do not share a log file.
+ * Usage: {@code AnalysisWorker <index> [catalog]}
+ */
+public class AnalysisWorker {
+    public static void main(String[] args) throws IOException {
+        Settings.setLogLevel(0);
+        Settings.setAppName("analysis-" + args[0]);
+        if (args.length > 1) {
+            Settings.setTargetCatalog(args[1]);
+        }
+        Main.loadTargetCatalog();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String apk;
+        while ((apk = in.readLine()) != null) {
+            if (apk.isEmpty()) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            String result;
+            try {
+                AnalysisResult analysisResult = Main.analyze(apk);
+                result = WorkerPool.resultLine(apk, WorkerPool.STATUS_OK, analysisResult.getEntryPoints().size(),
+                        analysisResult.getTargets().size(), analysisResult.getPaths().size(),
+                        (System.nanoTime() - start) / 1000000, "");
+            } catch (IOException | RuntimeException | AssertionError | StackOverflowError e) {
+                result = WorkerPool.resultLine(apk, WorkerPool.STATUS_FAILED, -1, -1, -1,
+                        (System.nanoTime() - start) / 1000000, e.toString());
+            }
+
+            // Start on a fresh line, whatever Soot left unterminated
+            System.out.println();
+            System.out.println(result);
+            System.out.flush();
+        }
+    }
+}
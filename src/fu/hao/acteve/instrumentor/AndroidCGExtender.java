@@ -0,0 +1,180 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import fu.hao.utils.Statistics;
+import soot.FastHierarchy;
+import soot.Kind;
+import soot.RefType;
+import soot.Scene;
+import soot.SceneTransformer;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Description: Extends the call graph by the calls of the framework to the listeners an app registers, e.g.
+ * from a method calling {@code setOnClickListener(l)} to the onClick method of l.
+ * <p>
+ * Every invoke statement of the methods with a body in the call graph is looked at once: an argument passed
+ * for a parameter whose type is a callback interface of the {@link CallbackRegistry} is a registration, and
+ * gets an edge from the registering method to every application callback method the static type of the
+ * argument may dispatch to. The callback methods of a type are computed once, so the pass takes time linear
+ * in the number of invoke statements, besides the edges it adds. Callback methods not in the call graph
+ * yet get their CHA edges as well, and are scanned in turn. All edges are collected first and added in one
+ * batch at the end, and the compact snapshot is invalidated once.
+ * <p>
+ * The callback edges are explicit, so that the path search follows them. Methods whose body was never
+ * retrieved are not scanned; the slice of a demand-driven call graph includes the registration sites of its
+ * callbacks for this reason, see {@link DemandCallGraph}. Given such a slice, the pass only adds edges to
+ * callbacks in the slice or to targets, and adds no CHA edges, so the graph stays within the slice.
+ */
+public class AndroidCGExtender extends SceneTransformer {
+    private static final String TAG = AndroidCGExtender.class.getSimpleName();
+
+    private final CallbackRegistry registry;
+    private final Set<SootMethod> slice;    // null for a whole-program call graph
+
+    // (static type of the listener, callback interface) -> its callback methods
+    private final Map<SootClass, Map<SootClass, List<SootMethod>>> callbacks = new HashMap<>();
+
+    public AndroidCGExtender() {
+        this(CallbackRegistry.v(), null);
+    }
+
+    /**
+     * @param registry the callback interfaces
+     * @param slice the methods of a demand-driven call graph, to which the new edges are restricted, or null
+     */
+    public AndroidCGExtender(CallbackRegistry registry, Set<SootMethod> slice) {
+        this.registry = registry;
+        this.slice = slice;
+    }
+
+    @Override
+    protected void internalTransform(String phaseName, Map<String, String> options) {
+        CallGraph callGraph = Scene.v().getCallGraph();
+        FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+
+        // The methods of the call graph, and those the new edges reach, which have no edges yet
+        Set<SootMethod> known = new HashSet<>();
+        Set<SootMethod> reached = new HashSet<>();
+        Deque<SootMethod> work = new ArrayDeque<>();
+        for (Iterator<Edge> edges = callGraph.iterator(); edges.hasNext(); ) {
+            Edge edge = edges.next();
+            if (known.add(edge.src())) {
+                work.add(edge.src());
+            }
+            if (known.add(edge.tgt())) {
+                work.add(edge.tgt());
+            }
+        }
+
+        List<Edge> added = new ArrayList<>();
+        Set<Long> edgeKeys = new HashSet<>();   // source and target of the edges out of the registering methods
+        int registrations = 0;
+        while (!work.isEmpty()) {
+            SootMethod method = work.poll();
+            // The slice already has the edges of its methods that matter
+            if (slice == null && reached.contains(method)) {
+                for (Edge edge : ChaEdges.outOf(method, hierarchy)) {
+                    added.add(edge);
+                    if (known.add(edge.tgt())) {
+                        reached.add(edge.tgt());
+                        work.add(edge.tgt());
+                    }
+                }
+            }
+            if (!method.hasActiveBody()) {
+                continue;
+            }
+
+            boolean indexed = false;
+            for (Unit unit : method.getActiveBody().getUnits()) {
+                Stmt stmt = (Stmt) unit;
+                if (!stmt.containsInvokeExpr()) {
+                    continue;
+                }
+                InvokeExpr invokeExpr = stmt.getInvokeExpr();
+                for (int i = 0; i < invokeExpr.getArgCount(); i++) {
+                    List<SootMethod> targets = callbacksOf(invokeExpr.getMethodRef().getParameterType(i),
+                            invokeExpr.getArg(i));
+                    if (targets.isEmpty()) {
+                        continue;
+                    }
+                    registrations++;
+                    if (!indexed) {
+                        for (Iterator<Edge> edges = callGraph.edgesOutOf(method); edges.hasNext(); ) {
+                            edgeKeys.add(keyOf(method, edges.next().tgt()));
+                        }
+                        indexed = true;
+                    }
+                    for (SootMethod target : targets) {
+                        if (slice != null && !slice.contains(target) && !MethodUtils.isTarget(target)) {
+                            continue;
+                        }
+                        if (!edgeKeys.add(keyOf(method, target))) {
+                            continue;
+                        }
+                        added.add(new Edge(method, stmt, target, Kind.VIRTUAL));
+                        if (known.add(target)) {
+                            reached.add(target);
+                            work.add(target);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (Edge edge : added) {
+            callGraph.addEdge(edge);
+        }
+        MethodUtils.invalidateCompactCallGraph();
+        Statistics.setCount("callbackEdges", added.size());
+        Log.msg(TAG, "Added %d edges for %d listener registrations, reaching %d new methods", added.size(),
+                registrations, reached.size());
+    }
+
+    // The callback methods an argument passed for a parameter of type [parameterType] may run
+    private List<SootMethod> callbacksOf(Type parameterType, Value argument) {
+        if (!(parameterType instanceof RefType) || !(argument.getType() instanceof RefType)) {
+            return Collections.emptyList();
+        }
+        SootClass anInterface = ((RefType) parameterType).getSootClass();
+        SootClass type = ((RefType) argument.getType()).getSootClass();
+
+        Map<SootClass, List<SootMethod>> byType = callbacks.get(anInterface);
+        if (byType == null) {
+            byType = new HashMap<>();
+            callbacks.put(anInterface, byType);
+        }
+        List<SootMethod> methods = byType.get(type);
+        if (methods == null) {
+            // A declared type looser than the parameter, e.g. before a cast, may be any implementor
+            methods = registry.callbacksOf(TypeHierarchy.v().isSubtype(type, anInterface) ? type : anInterface,
+                    anInterface);
+            byType.put(type, methods);
+        }
+        return methods;
+    }
+
+    private static long keyOf(SootMethod source, SootMethod target) {
+        return (long) source.getNumber() << 32 | target.getNumber();
+    }
+}
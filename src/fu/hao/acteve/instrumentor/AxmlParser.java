@@ -0,0 +1,317 @@
+package fu.hao.acteve.instrumentor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Description: Pull parser for Android binary XML (AXML), the format aapt compiles AndroidManifest.xml
+ * and the XML resources of an APK to. Like {@code XmlPullParser}, {@link #next()} steps from event to
+ * event, and the name, attributes or text of the current event are read by the getters.
+ * <p>
+ * The document is a sequence of little-endian chunks: a string pool, a map from attribute name
+ * strings to resource IDs, and one chunk per namespace, element start, element end and text.
+ * Strings are decoded on first use. Attribute values are returned as aapt's decoders print them,
+ * e.g. {@code true}, {@code 17} or {@code @7f040000} for a resource reference.
+ */
+public class AxmlParser {
+    public static final int START_DOCUMENT = 0;
+    public static final int END_DOCUMENT = 1;
+    public static final int START_TAG = 2;
+    public static final int END_TAG = 3;
+    public static final int TEXT = 4;
+
+    public static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_XML_START_NAMESPACE_TYPE = 0x0100;
+    private static final int RES_XML_END_NAMESPACE_TYPE = 0x0101;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_END_ELEMENT_TYPE = 0x0103;
+    private static final int RES_XML_CDATA_TYPE = 0x0104;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final int UTF8_FLAG = 1 << 8;
+
+    private static final int TYPE_REFERENCE = 0x01;
+    private static final int TYPE_ATTRIBUTE = 0x02;
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_FLOAT = 0x04;
+    private static final int TYPE_INT_DEC = 0x10;
+    private static final int TYPE_INT_HEX = 0x11;
+    private static final int TYPE_INT_BOOLEAN = 0x12;
+
+    private static final int ATTRIBUTE_NAMESPACE = 0;
+    private static final int ATTRIBUTE_NAME = 1;
+    private static final int ATTRIBUTE_RAW_VALUE = 2;
+    private static final int ATTRIBUTE_TYPE = 3;
+    private static final int ATTRIBUTE_DATA = 4;
+    private static final int ATTRIBUTE_FIELDS = 5;
+
+    private final ByteBuffer buffer;
+    private int position;               // offset of the next chunk
+
+    private int[] stringOffsets = new int[0];
+    private int stringsStart;
+    private boolean utf8;
+    private String[] strings = new String[0];
+    private int[] resourceIds = new int[0];
+
+    private int event = START_DOCUMENT;
+    private int depth = 0;
+    private int namespace;              // string index of the current element's namespace, -1 if none
+    private int name;                   // string index of the current element's name
+    private int text;                   // string index of the current text
+    private int[] attributes = new int[0];
+    private int attributeCount;
+
+    public AxmlParser(byte[] data) throws IOException {
+        buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.length < 8 || buffer.getShort(0) != RES_XML_TYPE) {
+            throw new IOException("not a binary XML document");
+        }
+        position = buffer.getShort(2) & 0xffff;
+    }
+
+    /**
+     * Method: fromApk
+     * Description: Read the binary AndroidManifest.xml of an APK without extracting anything to disk.
+     * @param apk the APK file
+     * @return a parser positioned before the manifest
+     * @throws IOException if the APK cannot be read or has no binary manifest
+     */
+    public static AxmlParser fromApk(File apk) throws IOException {
+        try (ZipFile zip = new ZipFile(apk)) {
+            ZipEntry entry = zip.getEntry("AndroidManifest.xml");
+            if (entry == null) {
+                throw new IOException(apk + " has no AndroidManifest.xml");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 1 << 14);
+            try (InputStream in = zip.getInputStream(entry)) {
+                byte[] chunk = new byte[1 << 14];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    bytes.write(chunk, 0, n);
+                }
+            }
+            return new AxmlParser(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Advances to the next start tag, end tag or text, and returns its type,
+     * {@code END_DOCUMENT} after the last one.
+     */
+    public int next() throws IOException {
+        if (event == END_TAG) {
+            depth--;
+        }
+
+        while (position + 8 <= buffer.limit()) {
+            int chunk = position;
+            int type = buffer.getShort(chunk) & 0xffff;
+            int headerSize = buffer.getShort(chunk + 2) & 0xffff;
+            int size = buffer.getInt(chunk + 4);
+            if (size < 8 || chunk + size > buffer.limit()) {
+                throw new IOException("corrupt chunk at offset " + chunk);
+            }
+            position = chunk + size;
+
+            int body = chunk + headerSize;
+            switch (type) {
+                case RES_STRING_POOL_TYPE:
+                    readStringPool(chunk);
+                    break;
+                case RES_XML_RESOURCE_MAP_TYPE:
+                    resourceIds = new int[(size - headerSize) / 4];
+                    for (int i = 0; i < resourceIds.length; i++) {
+                        resourceIds[i] = buffer.getInt(body + 4 * i);
+                    }
+                    break;
+                case RES_XML_START_ELEMENT_TYPE:
+                    readStartElement(body);
+                    depth++;
+                    return event = START_TAG;
+                case RES_XML_END_ELEMENT_TYPE:
+                    namespace = buffer.getInt(body);
+                    name = buffer.getInt(body + 4);
+                    attributeCount = 0;
+                    return event = END_TAG;
+                case RES_XML_CDATA_TYPE:
+                    text = buffer.getInt(body);
+                    attributeCount = 0;
+                    return event = TEXT;
+                case RES_XML_START_NAMESPACE_TYPE:
+                case RES_XML_END_NAMESPACE_TYPE:
+                default:
+                    // Namespaces are resolved through the attributes' URIs, and unknown chunks are skipped
+                    break;
+            }
+        }
+        return event = END_DOCUMENT;
+    }
+
+    private void readStringPool(int chunk) {
+        int count = buffer.getInt(chunk + 8);
+        int flags = buffer.getInt(chunk + 16);
+        stringsStart = chunk + buffer.getInt(chunk + 20);
+        utf8 = (flags & UTF8_FLAG) != 0;
+        stringOffsets = new int[count];
+        int offsets = chunk + (buffer.getShort(chunk + 2) & 0xffff);
+        for (int i = 0; i < count; i++) {
+            stringOffsets[i] = buffer.getInt(offsets + 4 * i);
+        }
+        strings = new String[count];
+    }
+
+    private void readStartElement(int body) {
+        namespace = buffer.getInt(body);
+        name = buffer.getInt(body + 4);
+        int attributeStart = buffer.getShort(body + 8) & 0xffff;
+        int attributeSize = buffer.getShort(body + 10) & 0xffff;
+        attributeCount = buffer.getShort(body + 12) & 0xffff;
+
+        if (attributes.length < attributeCount * ATTRIBUTE_FIELDS) {
+            attributes = new int[attributeCount * ATTRIBUTE_FIELDS];
+        }
+        for (int i = 0; i < attributeCount; i++) {
+            int attribute = body + attributeStart + i * attributeSize;
+            int field = i * ATTRIBUTE_FIELDS;
+            attributes[field + ATTRIBUTE_NAMESPACE] = buffer.getInt(attribute);
+            attributes[field + ATTRIBUTE_NAME] = buffer.getInt(attribute + 4);
+            attributes[field + ATTRIBUTE_RAW_VALUE] = buffer.getInt(attribute + 8);
+            attributes[field + ATTRIBUTE_TYPE] = buffer.get(attribute + 15) & 0xff;
+            attributes[field + ATTRIBUTE_DATA] = buffer.getInt(attribute + 16);
+        }
+    }
+
+    // The string of the pool at index i, null for -1 (no string)
+    private String getString(int i) {
+        if (i < 0 || i >= strings.length) {
+            return null;
+        }
+        if (strings[i] == null) {
+            strings[i] = decodeString(stringsStart + stringOffsets[i]);
+        }
+        return strings[i];
+    }
+
+    private String decodeString(int offset) {
+        if (utf8) {
+            // The UTF-16 length comes first, then the UTF-8 length, each in one or two bytes
+            offset += (buffer.get(offset) & 0x80) != 0 ? 2 : 1;
+            int length = buffer.get(offset) & 0xff;
+            if ((length & 0x80) != 0) {
+                length = ((length & 0x7f) << 8) | (buffer.get(offset + 1) & 0xff);
+                offset += 2;
+            } else {
+                offset += 1;
+            }
+            return new String(buffer.array(), offset, length, StandardCharsets.UTF_8);
+        }
+
+        int length = buffer.getShort(offset) & 0xffff;
+        offset += 2;
+        if ((length & 0x8000) != 0) {
+            length = ((length & 0x7fff) << 16) | (buffer.getShort(offset) & 0xffff);
+            offset += 2;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(offset + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    public int getEventType() {
+        return event;
+    }
+
+    /**
+     * Returns the nesting depth of the current element, 1 for the root.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the name of the current element, for start and end tags.
+     */
+    public String getName() {
+        return event == START_TAG || event == END_TAG ? getString(name) : null;
+    }
+
+    public String getNamespace() {
+        return event == START_TAG || event == END_TAG ? getString(namespace) : null;
+    }
+
+    public String getText() {
+        return event == TEXT ? getString(text) : null;
+    }
+
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    public String getAttributeNamespace(int i) {
+        return getString(attributes[i * ATTRIBUTE_FIELDS + ATTRIBUTE_NAMESPACE]);
+    }
+
+    public String getAttributeName(int i) {
+        return getString(attributes[i * ATTRIBUTE_FIELDS + ATTRIBUTE_NAME]);
+    }
+
+    /**
+     * Returns the resource ID of the name of attribute {@code i}, e.g. 0x01010003 for
+     * {@code android:name}, and 0 if it has none. Unlike the name string, it survives obfuscation.
+     */
+    public int getAttributeResourceId(int i) {
+        int nameIndex = attributes[i * ATTRIBUTE_FIELDS + ATTRIBUTE_NAME];
+        return nameIndex >= 0 && nameIndex < resourceIds.length ? resourceIds[nameIndex] : 0;
+    }
+
+    public String getAttributeValue(int i) {
+        int field = i * ATTRIBUTE_FIELDS;
+        int type = attributes[field + ATTRIBUTE_TYPE];
+        int data = attributes[field + ATTRIBUTE_DATA];
+        switch (type) {
+            case TYPE_STRING:
+                return getString(data);
+            case TYPE_INT_BOOLEAN:
+                return data != 0 ? "true" : "false";
+            case TYPE_INT_DEC:
+                return String.valueOf(data);
+            case TYPE_INT_HEX:
+                return "0x" + Integer.toHexString(data);
+            case TYPE_FLOAT:
+                return String.valueOf(Float.intBitsToFloat(data));
+            case TYPE_REFERENCE:
+                return String.format("@%08x", data);
+            case TYPE_ATTRIBUTE:
+                return String.format("?%08x", data);
+            default:
+                String raw = getString(attributes[field + ATTRIBUTE_RAW_VALUE]);
+                return raw != null ? raw : String.format("0x%08x", data);
+        }
+    }
+
+    /**
+     * Returns the value of the attribute with the given namespace and name of the current element,
+     * and {@code null} if it has none.
+     */
+    public String getAttributeValue(String namespace, String name) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (name.equals(getAttributeName(i))
+                    && (namespace == null ? getAttributeNamespace(i) == null : namespace.equals(getAttributeNamespace(i)))) {
+                return getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,97 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import fu.hao.utils.Settings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Description: Runs {@link Main#analyze(String)} on many APKs in one JVM.
+ * <p>
+ * Usage: {@code BatchMain <directory|list> [catalog]}, where {@code directory} holds the APKs and
+ * {@code list} is a text file with one APK path per line, '#' starting a comment and relative paths
+ * resolved against the list's directory.
+ * <p>
+ * FlowDroid calls {@code soot.G.reset()} for every app, which drops the Scene and with it the framework
+ * classes, so those are still loaded once per app. What is shared is everything outside of Soot: the
+ * JIT-compiled code, the sources and sinks catalog, the target definitions, and the on-disk analysis
+ * cache and call graph snapshots. A failing app is reported and skipped.
+ */
+public class BatchMain {
+    private static final String TAG = BatchMain.class.getSimpleName();
+
+    public static void main(String[] args) throws IOException {
+        Settings.setLogLevel(0);
+
+        List<File> apks = listApks(new File(args[0]));
+        if (args.length > 1) {
+            Settings.setTargetCatalog(args[1]);
+        }
+        Main.loadTargetCatalog();
+
+        int failed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < apks.size(); i++) {
+            File apk = apks.get(i);
+            long appStart = System.nanoTime();
+            try {
+                AnalysisResult result = Main.analyze(apk.getPath());
+                Log.msg(TAG, "[%d/%d] %s: %d entries, %d targets, %d paths in %.1f s",
+                        i + 1, apks.size(), apk, result.getEntryPoints().size(), result.getTargets().size(),
+                        result.getPaths().size(), (System.nanoTime() - appStart) / 1e9);
+            } catch (IOException | RuntimeException | AssertionError | StackOverflowError | OutOfMemoryError e) {
+                // The next analyze() resets Soot, which also frees whatever the failed app left behind
+                failed++;
+                Log.warn(TAG, "[%d/%d] %s: failed after %.1f s: %s",
+                        i + 1, apks.size(), apk, (System.nanoTime() - appStart) / 1e9, e);
+            }
+        }
+        soot.G.reset();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Log.msg(TAG, "Analyzed %d apps (%d failed) in %.1f s, %.1f apps/hour",
+                apks.size(), failed, seconds, seconds > 0 ? apks.size() * 3600 / seconds : 0.0);
+    }
+
+    /**
+     * Method: listApks
+     * Description: The *.apk files of a directory in name order, or the APKs of a list file in list order.
+     * @param source the directory or list file
+     * @return the APK files
+     * @throws IOException if the list cannot be read
+     */
+    static List<File> listApks(File source) throws IOException {
+        List<File> apks = new ArrayList<>();
+        if (source.isDirectory()) {
+            File[] files = source.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    if (file.isFile() && file.getName().endsWith(".apk")) {
+                        apks.add(file);
+                    }
+                }
+            }
+            return apks;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(source))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                File apk = new File(line);
+                apks.add(apk.isAbsolute() ? apk : new File(source.getAbsoluteFile().getParentFile(), line));
+            }
+        }
+        return apks;
+    }
+}
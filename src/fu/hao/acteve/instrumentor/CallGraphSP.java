@@ -0,0 +1,185 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.IndexMinPQ;
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.Edge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Description: Single-source shortest paths over the explicit edges of a {@link CompactCallGraph}.
+ * <p>
+ * With unit edge weights (the default) the search is a plain BFS and takes time
+ * proportional to <em>V</em> + <em>E</em>. Given an {@link EdgeWeight}, it falls back to
+ * Dijkstra's algorithm on an {@link IndexMinPQ}, taking time proportional to
+ * <em>E</em> log <em>V</em>. Both modes map vertex IDs back to methods through the
+ * array of the compact call graph, so no lookup is linear in <em>V</em>.
+ * Afterwards, {@code distTo()} and {@code hasPathTo()} take constant time and
+ * {@code pathTo()} takes time proportional to the length of the path.
+ */
+public class CallGraphSP {
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    /**
+     * Nonnegative weight of a forward edge of the compact call graph.
+     */
+    public interface EdgeWeight {
+        int weight(int edge);
+    }
+
+    private final CompactCallGraph callGraph;
+    private final int source;
+    private final int[] distTo;     // distTo[v] = distance of shortest s->v path
+    private final int[] edgeTo;     // edgeTo[v] = last edge on shortest s->v path, -1 if none
+
+    /**
+     * Computes a shortest-paths tree from {@code source} with unit edge weights (BFS).
+     *
+     * @param  callGraph the compact call graph
+     * @param  source the source method
+     * @throws IllegalArgumentException if {@code source} is not in {@code callGraph}
+     */
+    public CallGraphSP(CompactCallGraph callGraph, SootMethod source) {
+        this(callGraph, source, null);
+    }
+
+    /**
+     * Computes a shortest-paths tree from {@code source} with the given edge weights.
+     *
+     * @param  callGraph the compact call graph
+     * @param  source the source method
+     * @param  weight the edge weights, or {@code null} for unit weights
+     * @throws IllegalArgumentException if {@code source} is not in {@code callGraph}
+     *         or an edge weight is negative
+     */
+    public CallGraphSP(CompactCallGraph callGraph, SootMethod source, EdgeWeight weight) {
+        this.callGraph = callGraph;
+        this.source = callGraph.idOf(source);
+        if (this.source < 0) {
+            throw new IllegalArgumentException("source " + source + " is not in the call graph");
+        }
+
+        distTo = new int[callGraph.size()];
+        edgeTo = new int[callGraph.size()];
+        Arrays.fill(distTo, INFINITY);
+        Arrays.fill(edgeTo, -1);
+        distTo[this.source] = 0;
+
+        if (weight == null) {
+            bfs();
+        } else {
+            dijkstra(weight);
+        }
+    }
+
+    private void bfs() {
+        int[] queue = new int[callGraph.size()];
+        int head = 0, tail = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = callGraph.outBegin(v); e < callGraph.outEnd(v); e++) {
+                if (!callGraph.isExplicit(e)) {
+                    continue;
+                }
+                int w = callGraph.target(e);
+                if (distTo[w] == INFINITY) {
+                    distTo[w] = distTo[v] + 1;
+                    edgeTo[w] = e;
+                    queue[tail++] = w;
+                }
+            }
+        }
+    }
+
+    private void dijkstra(EdgeWeight weight) {
+        // relax vertices in order of distance from s
+        IndexMinPQ<Integer> pq = new IndexMinPQ<>(callGraph.size());
+        pq.insert(source, 0);
+        while (!pq.isEmpty()) {
+            int v = pq.delMin();
+            for (int e = callGraph.outBegin(v); e < callGraph.outEnd(v); e++) {
+                if (!callGraph.isExplicit(e)) {
+                    continue;
+                }
+                int cost = weight.weight(e);
+                if (cost < 0) {
+                    throw new IllegalArgumentException("edge " + callGraph.edge(e) + " has negative weight");
+                }
+
+                // relax edge e and update pq if changed
+                int w = callGraph.target(e);
+                if ((long) distTo[v] + cost < distTo[w]) {
+                    distTo[w] = distTo[v] + cost;
+                    edgeTo[w] = e;
+                    if (pq.contains(w)) {
+                        pq.decreaseKey(w, distTo[w]);
+                    } else {
+                        pq.insert(w, distTo[w]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length of a shortest path from the source to {@code v},
+     * {@code Integer.MAX_VALUE} if there is no such path.
+     */
+    public int distTo(SootMethod v) {
+        int w = callGraph.idOf(v);
+        return w < 0 ? INFINITY : distTo[w];
+    }
+
+    /**
+     * Returns true if there is a path from the source to {@code v}.
+     */
+    public boolean hasPathTo(SootMethod v) {
+        return distTo(v) < INFINITY;
+    }
+
+    /**
+     * Returns a shortest path from the source to {@code v} as a list of edges,
+     * and {@code null} if no such path.
+     */
+    public List<Edge> pathTo(SootMethod v) {
+        if (!hasPathTo(v)) {
+            return null;
+        }
+        LinkedList<Edge> path = new LinkedList<>();
+        for (int e = edgeTo[callGraph.idOf(v)]; e >= 0; e = edgeTo[callGraph.source(e)]) {
+            path.addFirst(callGraph.edge(e));
+        }
+        return path;
+    }
+
+    /**
+     * Returns the methods along a shortest path from the source to {@code v}, both included,
+     * and {@code null} if no such path.
+     */
+    public List<SootMethod> methodsTo(SootMethod v) {
+        if (!hasPathTo(v)) {
+            return null;
+        }
+        int w = callGraph.idOf(v);
+        SootMethod[] path = new SootMethod[countEdges(w) + 1];
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i] = callGraph.methodOf(w);
+            if (edgeTo[w] >= 0) {
+                w = callGraph.source(edgeTo[w]);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(path));
+    }
+
+    private int countEdges(int w) {
+        int n = 0;
+        for (int e = edgeTo[w]; e >= 0; e = edgeTo[callGraph.source(e)]) {
+            n++;
+        }
+        return n;
+    }
+}
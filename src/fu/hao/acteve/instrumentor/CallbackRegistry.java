@@ -0,0 +1,376 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Description: The Android callback interfaces and their callback methods, each (interface, sub-signature)
+ * numbered by a small ID.
+ * <p>
+ * The interfaces are those of AndroidCallbacks.txt, which FlowDroid reads as well, and the UI listeners of
+ * {@link InstrumentationHelper} with their callback sub-signatures, normalized to Soot's form. The
+ * sub-signatures of the other interfaces are taken from the Scene the first time the registry is queried
+ * for it, together with those the interfaces inherit; an ID, once given, stays the same for the whole run.
+ * For each Scene, the callback interfaces are indexed by sub-signature, so that isCallback() costs a hash
+ * lookup and a subtype check per interface declaring that sub-signature, which is rarely more than one.
+ */
+public class CallbackRegistry {
+    private static final String TAG = CallbackRegistry.class.getSimpleName();
+
+    public static final String CALLBACK_FILE = "AndroidCallbacks.txt";
+
+    private static CallbackRegistry instance = null;
+
+    private final Map<String, Map<String, Integer>> callbacks = new LinkedHashMap<>();  // interface -> sub-signature -> ID
+    private final List<String> signatures = new ArrayList<>();  // ID -> "<interface: sub-signature>"
+
+    // The index of the current Scene
+    private volatile Binding binding = null;
+
+    private static class Binding {
+        final Scene scene;
+        final List<SootClass> interfaces = new ArrayList<>();   // the callback interfaces in the Scene
+        final Map<String, Declarations> bySubSignature = new HashMap<>();
+
+        Binding(Scene scene) {
+            this.scene = scene;
+        }
+    }
+
+    // The callback interfaces declaring one sub-signature, with the ID each gives it
+    private static class Declarations {
+        SootClass[] interfaces = new SootClass[0];
+        int[] ids = new int[0];
+
+        void add(SootClass anInterface, int id) {
+            int n = interfaces.length;
+            interfaces = Arrays.copyOf(interfaces, n + 1);
+            ids = Arrays.copyOf(ids, n + 1);
+            interfaces[n] = anInterface;
+            ids[n] = id;
+        }
+    }
+
+    /**
+     * Returns the registry of CALLBACK_FILE and the UI listeners, loading it on first use.
+     */
+    public static synchronized CallbackRegistry v() {
+        if (instance == null) {
+            instance = new CallbackRegistry();
+            try {
+                instance.load(new File(CALLBACK_FILE));
+            } catch (IOException e) {
+                Log.warn(TAG, "Cannot read %s, only the UI listeners are callbacks: %s", CALLBACK_FILE, e.getMessage());
+            }
+            // Sorted, for the same IDs in every run
+            Map<String, String[]> listeners = new TreeMap<>(InstrumentationHelper.getUiListeners());
+            for (Map.Entry<String, String[]> listener : listeners.entrySet()) {
+                instance.add(listener.getKey(), listener.getValue());
+            }
+            Log.msg(TAG, "%d callback interfaces, %d callback methods", instance.callbacks.size(),
+                    instance.signatures.size());
+        }
+        return instance;
+    }
+
+    /**
+     * Method: load
+     * Description: Add the interfaces of a callback file, one class name per line.
+     * @param file the callback file
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized void load(File file) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method: add
+     * Description: Add a callback interface and some of its callback methods.
+     * @param anInterface the name of the interface, e.g. "android.view.View$OnClickListener"
+     * @param subSignatures sub-signatures of its callback methods, normalized by normalize()
+     */
+    public synchronized void add(String anInterface, String... subSignatures) {
+        Map<String, Integer> ids = callbacks.get(anInterface);
+        if (ids == null) {
+            ids = new LinkedHashMap<>();
+            callbacks.put(anInterface, ids);
+        }
+        String packageName = anInterface.substring(0, Math.max(anInterface.lastIndexOf('.'), 0));
+        for (String subSignature : subSignatures) {
+            addId(anInterface, ids, normalize(subSignature, packageName));
+        }
+        binding = null;
+    }
+
+    private int addId(String anInterface, Map<String, Integer> ids, String subSignature) {
+        Integer id = ids.get(subSignature);
+        if (id == null) {
+            id = signatures.size();
+            ids.put(subSignature, id);
+            signatures.add('<' + anInterface + ": " + subSignature + '>');
+        }
+        return id;
+    }
+
+    /**
+     * Method: normalize
+     * Description: Bring a hand-written sub-signature into Soot's form: no blanks between the parameters,
+     * simple class names qualified by [packageName], and nested classes written with '$', e.g.
+     * "boolean onKey(android.view.View, int, KeyEvent)" to "boolean onKey(android.view.View,int,android.view.KeyEvent)"
+     * and "android.view.ContextMenu.ContextMenuInfo" to "android.view.ContextMenu$ContextMenuInfo".
+     * @param subSignature the sub-signature
+     * @param packageName the package of simple class names
+     * @return the normalized sub-signature
+     */
+    public static String normalize(String subSignature, String packageName) {
+        subSignature = subSignature.trim();
+        int blank = subSignature.indexOf(' ');
+        int open = subSignature.indexOf('(');
+        int close = subSignature.lastIndexOf(')');
+        if (blank < 0 || open < blank || close < open) {
+            throw new IllegalArgumentException("Not a sub-signature: " + subSignature);
+        }
+
+        StringBuilder normalized = new StringBuilder(typeOf(subSignature.substring(0, blank), packageName))
+                .append(' ').append(subSignature.substring(blank + 1, open).trim()).append('(');
+        String parameters = subSignature.substring(open + 1, close).trim();
+        if (!parameters.isEmpty()) {
+            String separator = "";
+            for (String parameter : parameters.split(",")) {
+                normalized.append(separator).append(typeOf(parameter, packageName));
+                separator = ",";
+            }
+        }
+        return normalized.append(')').toString();
+    }
+
+    private static String typeOf(String type, String packageName) {
+        type = type.trim();
+        String dimensions = "";
+        int bracket = type.indexOf('[');
+        if (bracket >= 0) {
+            dimensions = type.substring(bracket).replace(" ", "");
+            type = type.substring(0, bracket).trim();
+        }
+        switch (type) {
+            case "void": case "boolean": case "byte": case "short": case "char":
+            case "int": case "long": case "float": case "double":
+                return type + dimensions;
+        }
+        if (type.indexOf('.') < 0 && !packageName.isEmpty()) {
+            type = packageName + '.' + type;
+        }
+
+        // The segments after the first capitalized one are nested classes
+        String[] segments = type.split("\\.");
+        StringBuilder name = new StringBuilder(segments[0]);
+        boolean nested = Character.isUpperCase(segments[0].charAt(0));
+        for (int i = 1; i < segments.length; i++) {
+            name.append(nested ? '$' : '.').append(segments[i]);
+            nested |= Character.isUpperCase(segments[i].charAt(0));
+        }
+        return name.append(dimensions).toString();
+    }
+
+    public synchronized int size() {
+        return signatures.size();
+    }
+
+    /**
+     * Returns "<interface: sub-signature>" of the callback method numbered [id].
+     */
+    public synchronized String signatureOf(int id) {
+        return signatures.get(id);
+    }
+
+    public synchronized Set<String> getInterfaces() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(callbacks.keySet()));
+    }
+
+    // The index of the current Scene, completing the sub-signatures of its callback interfaces
+    private Binding bind() {
+        Binding current = binding;
+        if (current != null && current.scene == Scene.v()) {
+            return current;
+        }
+        synchronized (this) {
+            if (binding != null && binding.scene == Scene.v()) {
+                return binding;
+            }
+            Binding bound = new Binding(Scene.v());
+            for (Map.Entry<String, Map<String, Integer>> entry : callbacks.entrySet()) {
+                SootClass anInterface = Scene.v().getSootClassUnsafe(entry.getKey(), false);
+                if (anInterface == null || anInterface.isPhantom()) {
+                    continue;
+                }
+                bound.interfaces.add(anInterface);
+                for (String subSignature : callbackMethodsOf(anInterface)) {
+                    addId(entry.getKey(), entry.getValue(), subSignature);
+                }
+                for (Map.Entry<String, Integer> callback : entry.getValue().entrySet()) {
+                    Declarations declarations = bound.bySubSignature.get(callback.getKey());
+                    if (declarations == null) {
+                        declarations = new Declarations();
+                        bound.bySubSignature.put(callback.getKey(), declarations);
+                    }
+                    declarations.add(anInterface, callback.getValue());
+                }
+            }
+            binding = bound;
+            return bound;
+        }
+    }
+
+    // The sub-signatures of the instance methods of an interface and of the interfaces it extends, sorted
+    private static List<String> callbackMethodsOf(SootClass anInterface) {
+        List<String> subSignatures = new ArrayList<>();
+        Set<SootClass> seen = new HashSet<>();
+        Deque<SootClass> work = new ArrayDeque<>();
+        work.add(anInterface);
+        while (!work.isEmpty()) {
+            SootClass klass = work.poll();
+            if (!seen.add(klass) || klass.isPhantom()) {
+                continue;
+            }
+            for (SootMethod method : klass.getMethods()) {
+                if (!method.isStatic() && !method.isConstructor() && !method.isStaticInitializer()) {
+                    subSignatures.add(method.getSubSignature());
+                }
+            }
+            work.addAll(klass.getInterfaces());
+        }
+        Collections.sort(subSignatures);
+        return subSignatures;
+    }
+
+    /**
+     * Method: callbackIdOf
+     * Description: The ID of the callback method [method] implements, i.e. of the sub-signature of [method]
+     * in a callback interface its declaring class implements. A method only inherited by an implementor is
+     * found by findImplementations() instead.
+     * @param method the method
+     * @return the ID, or -1 if it is no callback
+     */
+    public int callbackIdOf(SootMethod method) {
+        if (method.isStatic()) {
+            return -1;
+        }
+        Declarations declarations = bind().bySubSignature.get(method.getSubSignature());
+        if (declarations == null) {
+            return -1;
+        }
+        SootClass klass = method.getDeclaringClass();
+        TypeHierarchy hierarchy = TypeHierarchy.v();
+        for (int i = 0; i < declarations.interfaces.length; i++) {
+            if (hierarchy.isSubtype(klass, declarations.interfaces[i])) {
+                return declarations.ids[i];
+            }
+        }
+        return -1;
+    }
+
+    public boolean isCallback(SootMethod method) {
+        return callbackIdOf(method) >= 0;
+    }
+
+    /**
+     * Method: findImplementations
+     * Description: Find the callback methods of the application classes: for every concrete application
+     * class implementing a callback interface, the method each callback of that interface dispatches to,
+     * if an application class declares it.
+     * @return the callback methods, grouped by interface
+     */
+    public Set<SootMethod> findImplementations() {
+        Set<SootMethod> implementations = new LinkedHashSet<>();
+        for (SootClass anInterface : bind().interfaces) {
+            implementations.addAll(callbacksOf(anInterface, anInterface));
+        }
+        return implementations;
+    }
+
+    /**
+     * Returns the callback sub-signatures of [anInterface], none if it is no callback interface.
+     */
+    public List<String> callbackSubSignaturesOf(SootClass anInterface) {
+        bind();
+        synchronized (this) {
+            Map<String, Integer> ids = callbacks.get(anInterface.getName());
+            return ids == null ? Collections.<String>emptyList() : new ArrayList<>(ids.keySet());
+        }
+    }
+
+    /**
+     * Method: callbacksOf
+     * Description: Find the application methods the callbacks of [anInterface] may run on an object of
+     * static type [type], i.e. in each concrete application class that is a subtype of both.
+     * @param type the static type of the listener object
+     * @param anInterface the callback interface it is registered as
+     * @return the callback methods, none if [anInterface] is no callback interface
+     */
+    public List<SootMethod> callbacksOf(SootClass type, SootClass anInterface) {
+        List<String> subSignatures = callbackSubSignaturesOf(anInterface);
+        if (subSignatures.isEmpty()) {
+            return Collections.emptyList();
+        }
+        TypeHierarchy hierarchy = TypeHierarchy.v();
+        Set<SootMethod> callbacks = new LinkedHashSet<>();
+        BitSet implementors = hierarchy.subtypesOf(type);
+        for (int c = implementors.nextSetBit(0); c >= 0; c = implementors.nextSetBit(c + 1)) {
+            SootClass klass = Scene.v().getClassNumberer().get(c);
+            if (klass == null || !klass.isApplicationClass() || klass.isInterface() || klass.isAbstract()
+                    || type != anInterface && !hierarchy.isSubtype(klass, anInterface)) {
+                continue;
+            }
+            for (String subSignature : subSignatures) {
+                SootMethod method = dispatch(klass, subSignature);
+                if (method != null && method.getDeclaringClass().isApplicationClass()) {
+                    callbacks.add(method);
+                }
+            }
+        }
+        return new ArrayList<>(callbacks);
+    }
+
+    // The concrete method a call of [subSignature] on an instance of [klass] runs, null if none is known
+    private static SootMethod dispatch(SootClass klass, String subSignature) {
+        for (SootClass c = klass; c != null; c = c.hasSuperclass() ? c.getSuperclass() : null) {
+            SootMethod method = c.getMethodUnsafe(subSignature);
+            if (method != null && method.isConcrete()) {
+                return method;
+            }
+        }
+        return null;
+    }
+}
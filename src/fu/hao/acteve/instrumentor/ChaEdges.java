@@ -0,0 +1,116 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import soot.Body;
+import soot.EntryPoints;
+import soot.FastHierarchy;
+import soot.Kind;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.ValueBox;
+import soot.jimple.FieldRef;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.Edge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Description: The call edges class hierarchy analysis finds in the body of one method, as Soot's CHA call
+ * graph has them: the explicit call edges and the static initializer edges. Used to build a call graph
+ * method by method instead of running the cg pack over the whole program.
+ */
+final class ChaEdges {
+    private static final String TAG = ChaEdges.class.getSimpleName();
+
+    private ChaEdges() {
+    }
+
+    /**
+     * Method: outOf
+     * Description: Find the edges out of [method], retrieving its body if it has none yet.
+     * @param method the caller
+     * @param hierarchy the hierarchy of the Scene
+     * @return the edges, none if the method has no body
+     */
+    static List<Edge> outOf(SootMethod method, FastHierarchy hierarchy) {
+        List<Edge> edges = new ArrayList<>();
+        Body body;
+        try {
+            if (!method.isConcrete()) {
+                return edges;
+            }
+            body = method.retrieveActiveBody();
+        } catch (RuntimeException e) {
+            // No body, e.g. a library method excluded by the options
+            return edges;
+        }
+
+        for (Unit unit : body.getUnits()) {
+            Stmt stmt = (Stmt) unit;
+            try {
+                if (stmt.containsInvokeExpr()) {
+                    InvokeExpr invokeExpr = stmt.getInvokeExpr();
+                    for (SootMethod target : targetsOf(invokeExpr, method, hierarchy)) {
+                        if (target != null) {
+                            edges.add(new Edge(method, stmt, target));
+                        }
+                    }
+                    if (invokeExpr instanceof StaticInvokeExpr) {
+                        addClinitEdges(edges, method, stmt, invokeExpr.getMethodRef().getDeclaringClass());
+                    }
+                }
+                if (stmt.containsFieldRef()) {
+                    FieldRef fieldRef = stmt.getFieldRef();
+                    if (fieldRef instanceof StaticFieldRef) {
+                        addClinitEdges(edges, method, stmt, fieldRef.getFieldRef().declaringClass());
+                    }
+                }
+                for (ValueBox box : stmt.getUseBoxes()) {
+                    if (box.getValue() instanceof NewExpr) {
+                        addClinitEdges(edges, method, stmt, ((NewExpr) box.getValue()).getBaseType().getSootClass());
+                    }
+                }
+            } catch (RuntimeException e) {
+                // An unresolvable call site has no edges in Soot's call graph either
+                Log.debug(TAG, "No edges for %s in %s: %s", stmt, method, e);
+            }
+        }
+        return edges;
+    }
+
+    private static Collection<SootMethod> targetsOf(InvokeExpr invokeExpr, SootMethod caller, FastHierarchy hierarchy) {
+        if (invokeExpr instanceof StaticInvokeExpr) {
+            return Collections.singleton(invokeExpr.getMethod());
+        }
+        if (invokeExpr instanceof SpecialInvokeExpr) {
+            return Collections.singleton(hierarchy.resolveSpecialDispatch((SpecialInvokeExpr) invokeExpr, caller));
+        }
+        if (invokeExpr instanceof InstanceInvokeExpr) {
+            // Every subtype of the declared type of the receiver, arrays being objects
+            Type type = ((InstanceInvokeExpr) invokeExpr).getBase().getType();
+            SootClass receiver = type instanceof RefType ? ((RefType) type).getSootClass()
+                    : Scene.v().getObjectType().getSootClass();
+            return hierarchy.resolveAbstractDispatch(receiver, invokeExpr.getMethod());
+        }
+        return Collections.emptySet();
+    }
+
+    private static void addClinitEdges(List<Edge> edges, SootMethod method, Stmt stmt, SootClass klass) {
+        for (SootMethod clinit : EntryPoints.v().clinitsOf(klass)) {
+            edges.add(new Edge(method, stmt, clinit, Kind.CLINIT));
+        }
+    }
+}
@@ -0,0 +1,596 @@
+package fu.hao.acteve.instrumentor;
+
+import soot.Kind;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Immutable snapshot of a Soot {@link CallGraph} over dense int method IDs.
+ * Forward and reverse adjacency are stored in CSR (compressed sparse row) form, i.e.
+ * the out edges of {@code v} are the forward edge IDs {@code outBegin(v) .. outEnd(v) - 1},
+ * and the in edges of {@code v} are the reverse slots {@code inBegin(v) .. inEnd(v) - 1}.
+ * Whether an edge is explicit is kept as a bitset indexed by forward edge ID, and so is whether it
+ * is a parallel edge, i.e. an explicit edge to a target an earlier explicit edge of its source calls
+ * already: Soot keeps one edge per call site, so a method calling the same callee twice has two.
+ * <p>
+ * A snapshot can be saved to a versioned binary file with {@link #save(File)} and reloaded with
+ * {@link #load(File)}, which memory-maps the file and serves the adjacency straight from the mapped
+ * buffers. A loaded snapshot knows its methods by signature only and resolves them against the
+ * current Scene on first use, so it needs the classes of the app loaded but not the cg pack.
+ * Resolving may add phantom classes and methods to the Scene, which is not thread-safe, so a loaded
+ * snapshot has to be resolved with {@link #resolveMethods()} before several threads read it.
+ */
+public class CompactCallGraph {
+    private static final int MAGIC = 0x43434753;   // "CCGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private static final Kind[] KINDS = {Kind.INVALID, Kind.STATIC, Kind.VIRTUAL, Kind.INTERFACE, Kind.SPECIAL,
+            Kind.CLINIT, Kind.THREAD, Kind.EXECUTOR, Kind.ASYNCTASK, Kind.FINALIZE, Kind.HANDLER,
+            Kind.INVOKE_FINALIZE, Kind.PRIVILEGED, Kind.NEWINSTANCE, Kind.REFL_INVOKE,
+            Kind.REFL_CONSTR_NEWINSTANCE, Kind.REFL_CLASS_NEWINSTANCE};
+
+    private final SootMethod[] methods;         // methods[v] = method of ID v, resolved on demand if loaded
+    private final Map<SootMethod, Integer> ids; // inverse of methods, null if loaded
+    private final String[] signatures;          // signatures[v] = signature of ID v, null unless loaded
+    private final Map<String, Integer> signatureIds; // inverse of signatures, null unless loaded
+
+    private final IntBuffer outOffsets;         // out edges of v are [outOffsets[v], outOffsets[v + 1])
+    private final IntBuffer sources;            // sources[e] = source ID of forward edge e
+    private final IntBuffer targets;            // targets[e] = target ID of forward edge e
+    private final Edge[] edges;                 // edges[e] = the original Soot edge, null if loaded
+    private final ByteBuffer kinds;             // kinds[e] = index in kindTable of edge e, null unless loaded
+    private final Kind[] kindTable;
+
+    private final IntBuffer inOffsets;          // in edges of v are [inOffsets[v], inOffsets[v + 1])
+    private final IntBuffer inEdges;            // inEdges[i] = forward edge ID of reverse slot i
+
+    private final LongBuffer explicit;          // bit e of the words is set iff edge e is explicit
+    private final long[] parallel;              // bit e is set iff edge e is explicit and a parallel edge
+
+    private CompactCallGraph(SootMethod[] methods, Map<SootMethod, Integer> ids,
+                             Edge[] unsortedEdges, int[] unsortedSources, int[] unsortedTargets) {
+        int n = methods.length;
+        int m = unsortedEdges.length;
+        this.methods = methods;
+        this.ids = ids;
+        this.signatures = null;
+        this.signatureIds = null;
+        this.kinds = null;
+        this.kindTable = null;
+
+        // Counting sort the edges by source to get the forward rows
+        int[] outOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            outOffsets[unsortedSources[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            outOffsets[v + 1] += outOffsets[v];
+        }
+        int[] sources = new int[m];
+        int[] targets = new int[m];
+        edges = new Edge[m];
+        long[] explicit = new long[(m + 63) >>> 6];
+        int[] next = new int[n];
+        System.arraycopy(outOffsets, 0, next, 0, n);
+        for (int e = 0; e < m; e++) {
+            int slot = next[unsortedSources[e]]++;
+            sources[slot] = unsortedSources[e];
+            targets[slot] = unsortedTargets[e];
+            edges[slot] = unsortedEdges[e];
+            if (unsortedEdges[e].isExplicit()) {
+                explicit[slot >>> 6] |= 1L << slot;
+            }
+        }
+
+        // And by target to get the reverse rows
+        int[] inOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            inOffsets[targets[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] inEdges = new int[m];
+        System.arraycopy(inOffsets, 0, next, 0, n);
+        for (int e = 0; e < m; e++) {
+            inEdges[next[targets[e]]++] = e;
+        }
+
+        this.outOffsets = IntBuffer.wrap(outOffsets);
+        this.sources = IntBuffer.wrap(sources);
+        this.targets = IntBuffer.wrap(targets);
+        this.inOffsets = IntBuffer.wrap(inOffsets);
+        this.inEdges = IntBuffer.wrap(inEdges);
+        this.explicit = LongBuffer.wrap(explicit);
+        this.parallel = parallelEdges();
+    }
+
+    private CompactCallGraph(String[] signatures, Kind[] kindTable, ByteBuffer buffer) {
+        int n = signatures.length;
+        int m = buffer.getInt(12);
+        this.methods = new SootMethod[n];
+        this.ids = null;
+        this.signatures = signatures;
+        this.signatureIds = new HashMap<>(n * 2);
+        for (int v = 0; v < n; v++) {
+            signatureIds.put(signatures[v], v);
+        }
+        this.edges = null;
+        this.kindTable = kindTable;
+
+        int offset = HEADER_BYTES;
+        outOffsets = slice(buffer, offset, (n + 1) * 4).asIntBuffer();
+        offset += (n + 1) * 4;
+        sources = slice(buffer, offset, m * 4).asIntBuffer();
+        offset += m * 4;
+        targets = slice(buffer, offset, m * 4).asIntBuffer();
+        offset += m * 4;
+        inOffsets = slice(buffer, offset, (n + 1) * 4).asIntBuffer();
+        offset += (n + 1) * 4;
+        inEdges = slice(buffer, offset, m * 4).asIntBuffer();
+        offset = align8(offset + m * 4);
+        explicit = slice(buffer, offset, ((m + 63) >>> 6) * 8).asLongBuffer();
+        offset += ((m + 63) >>> 6) * 8;
+        kinds = slice(buffer, offset, m);
+        parallel = parallelEdges();
+    }
+
+    // Mark the explicit edges whose source has an earlier explicit edge to the same target
+    private long[] parallelEdges() {
+        int n = size();
+        long[] parallel = new long[(edgeCount() + 63) >>> 6];
+        int[] lastSource = new int[n];
+        Arrays.fill(lastSource, -1);
+        for (int v = 0; v < n; v++) {
+            for (int e = outBegin(v); e < outEnd(v); e++) {
+                if (!isExplicit(e)) {
+                    continue;
+                }
+                int w = target(e);
+                if (lastSource[w] == v) {
+                    parallel[e >>> 6] |= 1L << e;
+                } else {
+                    lastSource[w] = v;
+                }
+            }
+        }
+        return parallel;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(buffer.order());
+    }
+
+    private static int align8(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    /**
+     * Compacts the given call graph. Takes time proportional to <em>V</em> + <em>E</em>.
+     *
+     * @param  callGraph the Soot call graph
+     * @return the compact snapshot of {@code callGraph}
+     */
+    public static CompactCallGraph of(CallGraph callGraph) {
+        Map<SootMethod, Integer> ids = new HashMap<>();
+        int m = callGraph.size();
+        Edge[] edges = new Edge[m];
+        int[] sources = new int[m];
+        int[] targets = new int[m];
+
+        int e = 0;
+        for (Edge edge : callGraph) {
+            edges[e] = edge;
+            sources[e] = idOf(ids, edge.src());
+            targets[e] = idOf(ids, edge.tgt());
+            e++;
+        }
+
+        SootMethod[] methods = new SootMethod[ids.size()];
+        for (Map.Entry<SootMethod, Integer> entry : ids.entrySet()) {
+            methods[entry.getValue()] = entry.getKey();
+        }
+
+        return new CompactCallGraph(methods, ids, edges, sources, targets);
+    }
+
+    /**
+     * Returns the subgraph made of the given forward edges and their endpoints, with methods
+     * renumbered densely in the order of their lowest ID here.
+     * Takes time proportional to <em>V</em> plus the number of selected edges.
+     *
+     * @param  selected the forward edge IDs to keep
+     * @return the compact subgraph
+     */
+    public CompactCallGraph subgraph(BitSet selected) {
+        int m = selected.cardinality();
+        int[] renumbered = new int[size()];
+        Arrays.fill(renumbered, -1);
+        for (int e = selected.nextSetBit(0); e >= 0; e = selected.nextSetBit(e + 1)) {
+            renumbered[source(e)] = 0;
+            renumbered[target(e)] = 0;
+        }
+
+        Map<SootMethod, Integer> subIds = new HashMap<>();
+        int n = 0;
+        for (int v = 0; v < renumbered.length; v++) {
+            if (renumbered[v] == 0) {
+                renumbered[v] = n++;
+                subIds.put(methodOf(v), renumbered[v]);
+            }
+        }
+        SootMethod[] subMethods = new SootMethod[n];
+        for (int v = 0; v < renumbered.length; v++) {
+            if (renumbered[v] >= 0) {
+                subMethods[renumbered[v]] = methodOf(v);
+            }
+        }
+
+        Edge[] subEdges = new Edge[m];
+        int[] subSources = new int[m];
+        int[] subTargets = new int[m];
+        int i = 0;
+        for (int e = selected.nextSetBit(0); e >= 0; e = selected.nextSetBit(e + 1)) {
+            subEdges[i] = edge(e);
+            subSources[i] = renumbered[source(e)];
+            subTargets[i] = renumbered[target(e)];
+            i++;
+        }
+
+        return new CompactCallGraph(subMethods, subIds, subEdges, subSources, subTargets);
+    }
+
+    private static int idOf(Map<SootMethod, Integer> ids, SootMethod method) {
+        Integer id = ids.get(method);
+        if (id == null) {
+            id = ids.size();
+            ids.put(method, id);
+        }
+        return id;
+    }
+
+    /**
+     * Writes this call graph to {@code file}: a header, the CSR arrays, the explicit bits and the
+     * edge kinds, all little-endian and laid out to be mapped as is, then the kind names and the
+     * method signatures. The file is written next to its final name and renamed in one step.
+     *
+     * @param  file the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        int n = size();
+        int m = edgeCount();
+        List<Kind> kindList = new ArrayList<>();
+        Map<Kind, Integer> kindIds = new HashMap<>();
+        byte[] kindOf = new byte[m];
+        for (int e = 0; e < m; e++) {
+            Kind kind = kind(e);
+            Integer k = kindIds.get(kind);
+            if (k == null) {
+                k = kindList.size();
+                kindIds.put(kind, k);
+                kindList.add(kind);
+            }
+            kindOf[e] = (byte) (int) k;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = new FileOutputStream(tmp).getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(kindList.size()).putInt(0);
+            header.flip();
+            write(channel, header);
+            write(channel, outOffsets, n + 1);
+            write(channel, sources, m);
+            write(channel, targets, m);
+            write(channel, inOffsets, n + 1);
+            write(channel, inEdges, m);
+            write(channel, ByteBuffer.allocate(align8((int) channel.position()) - (int) channel.position()));
+
+            ByteBuffer words = ByteBuffer.allocate(((m + 63) >>> 6) * 8).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < (m + 63) >>> 6; i++) {
+                words.putLong(explicit.get(i));
+            }
+            words.flip();
+            write(channel, words);
+            write(channel, ByteBuffer.wrap(kindOf));
+
+            ByteBuffer strings = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (Kind kind : kindList) {
+                strings = putString(channel, strings, kind.name());
+            }
+            for (int v = 0; v < n; v++) {
+                strings = putString(channel, strings, signatureOf(v));
+            }
+            strings.flip();
+            write(channel, strings);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        // Replace the snapshot in one step so that a concurrent reader never sees half of it
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("cannot rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void write(FileChannel channel, IntBuffer ints, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < length; i++) {
+            if (!bytes.hasRemaining()) {
+                bytes.flip();
+                write(channel, bytes);
+                bytes.clear();
+            }
+            bytes.putInt(ints.get(i));
+        }
+        bytes.flip();
+        write(channel, bytes);
+    }
+
+    // Append the length and UTF-8 bytes of s, flushing or growing the buffer as needed
+    private static ByteBuffer putString(FileChannel channel, ByteBuffer buffer, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < bytes.length + 4) {
+            buffer.flip();
+            write(channel, buffer);
+            buffer.clear();
+            if (buffer.capacity() < bytes.length + 4) {
+                buffer = ByteBuffer.allocate(bytes.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        buffer.putInt(bytes.length).put(bytes);
+        return buffer;
+    }
+
+    /**
+     * Memory-maps a snapshot written by {@link #save(File)}. Only the signatures are decoded up front,
+     * the adjacency is read from the mapping on every access.
+     * Takes time proportional to <em>V</em> plus the length of the signatures.
+     *
+     * @param  file the snapshot file
+     * @return the mapped call graph
+     * @throws IOException if the file cannot be read or is not a snapshot of this version
+     */
+    public static CompactCallGraph load(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a call graph snapshot");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a call graph snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " has unsupported version " + buffer.getInt(4));
+        }
+
+        int n = buffer.getInt(8);
+        int m = buffer.getInt(12);
+        long offset = ((HEADER_BYTES + (n + 1) * 8L + m * 12L + 7) & ~7L) + ((m + 63) >>> 6) * 8L + m;
+        if (n < 0 || m < 0 || offset > buffer.capacity()) {
+            throw new IOException(file + " is truncated");
+        }
+
+        try {
+            ByteBuffer strings = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            strings.position((int) offset);
+            Kind[] kindTable = new Kind[buffer.getInt(16)];
+            for (int k = 0; k < kindTable.length; k++) {
+                kindTable[k] = kindOf(getString(strings));
+            }
+            String[] signatures = new String[n];
+            for (int v = 0; v < n; v++) {
+                signatures[v] = getString(strings);
+            }
+            return new CompactCallGraph(signatures, kindTable, buffer);
+        } catch (RuntimeException e) {
+            throw new IOException(file + " is corrupt: " + e, e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Kind kindOf(String name) {
+        for (Kind kind : KINDS) {
+            if (kind.name().equals(name)) {
+                return kind;
+            }
+        }
+        return Kind.INVALID;
+    }
+
+    /**
+     * Returns the number of methods (vertices) in this call graph.
+     */
+    public int size() {
+        return methods.length;
+    }
+
+    /**
+     * Returns the number of edges in this call graph.
+     */
+    public int edgeCount() {
+        return targets.limit();
+    }
+
+    /**
+     * Returns the ID of {@code method}, or -1 if it is not in this call graph.
+     */
+    public int idOf(SootMethod method) {
+        Integer id = ids != null ? ids.get(method) : signatureIds.get(method.getSignature());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the method of ID {@code v}, resolving it against the Scene first if this snapshot was loaded.
+     * Not thread-safe until {@link #resolveMethods()} was called.
+     */
+    public SootMethod methodOf(int v) {
+        SootMethod method = methods[v];
+        if (method == null) {
+            method = resolve(signatures[v]);
+            methods[v] = method;
+        }
+        return method;
+    }
+
+    /**
+     * Resolves the methods of all IDs of a loaded snapshot at once, after which {@link #methodOf(int)}
+     * only reads. Takes time proportional to <em>V</em> the first time and nothing afterwards.
+     */
+    public void resolveMethods() {
+        if (signatures == null) {
+            return;
+        }
+        for (int v = 0; v < methods.length; v++) {
+            methodOf(v);
+        }
+    }
+
+    public String signatureOf(int v) {
+        return signatures != null ? signatures[v] : methods[v].getSignature();
+    }
+
+    // Look up a method of a loaded snapshot in the Scene, adding it as phantom if the Scene lacks it
+    private static SootMethod resolve(String signature) {
+        SootMethod method = Scene.v().grabMethod(signature);
+        if (method != null) {
+            return method;
+        }
+
+        int colon = signature.indexOf(": ");
+        int open = signature.indexOf('(', colon);
+        int space = signature.lastIndexOf(' ', open);
+        SootClass klass = Scene.v().getSootClassUnsafe(signature.substring(1, colon));
+        if (klass == null) {
+            klass = Scene.v().makeSootClass(signature.substring(1, colon));
+            klass.setPhantomClass();
+            Scene.v().addClass(klass);
+        }
+        String subSignature = signature.substring(colon + 2, signature.length() - 1);
+        method = klass.getMethodUnsafe(subSignature);
+        if (method != null) {
+            return method;
+        }
+
+        List<Type> parameterTypes = new ArrayList<>();
+        String parameters = signature.substring(open + 1, signature.length() - 2);
+        if (!parameters.isEmpty()) {
+            for (String parameter : parameters.split(",")) {
+                parameterTypes.add(typeOf(parameter));
+            }
+        }
+        method = Scene.v().makeSootMethod(signature.substring(space + 1, open), parameterTypes,
+                typeOf(signature.substring(colon + 2, space)));
+        method.setPhantom(true);
+        klass.addMethod(method);
+        return method;
+    }
+
+    private static Type typeOf(String name) {
+        Type type = Scene.v().getTypeUnsafe(name);
+        return type != null ? type : RefType.v(name);
+    }
+
+    public int outBegin(int v) {
+        return outOffsets.get(v);
+    }
+
+    public int outEnd(int v) {
+        return outOffsets.get(v + 1);
+    }
+
+    public int inBegin(int v) {
+        return inOffsets.get(v);
+    }
+
+    public int inEnd(int v) {
+        return inOffsets.get(v + 1);
+    }
+
+    /**
+     * Returns the forward edge ID stored in reverse slot {@code i}.
+     */
+    public int inEdge(int i) {
+        return inEdges.get(i);
+    }
+
+    public int source(int e) {
+        return sources.get(e);
+    }
+
+    public int target(int e) {
+        return targets.get(e);
+    }
+
+    public boolean isExplicit(int e) {
+        return (explicit.get(e >>> 6) & (1L << e)) != 0;
+    }
+
+    /**
+     * Returns true if {@code e} is explicit and an earlier explicit edge of its source has the same target.
+     */
+    public boolean isParallel(int e) {
+        return (parallel[e >>> 6] & (1L << e)) != 0;
+    }
+
+    public Kind kind(int e) {
+        return edges != null ? edges[e].kind() : kindTable[kinds.get(e)];
+    }
+
+    /**
+     * Returns the Soot edge {@code e}. The edges of a loaded snapshot are rebuilt without their call site.
+     */
+    public Edge edge(int e) {
+        if (edges != null) {
+            return edges[e];
+        }
+        return new Edge(methodOf(source(e)), null, methodOf(target(e)), kind(e));
+    }
+}
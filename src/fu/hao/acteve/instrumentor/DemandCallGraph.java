@@ -0,0 +1,306 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import fu.hao.utils.Statistics;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import soot.FastHierarchy;
+import soot.Kind;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Description: Builds the call graph only for the code between the entry points and the targets, instead of
+ * running the cg pack over the whole program.
+ * <p>
+ * The call sites of the APK are indexed from its dex files with dexlib2, without any Soot body, by the
+ * sub-signature of the method they invoke. A backward search from the target definitions then collects the
+ * slice: every app method with a call site that may dispatch to a method of the slice, i.e. that invokes the
+ * same sub-signature on a subtype or a supertype of its declaring class. Only the bodies of the slice and of
+ * the dummy main method are retrieved, and only their CHA edges into the slice or to a target are kept, so
+ * every path from an entry point to a target is in the graph, as every entry point is, while the rest of
+ * the app and its libraries is never converted to Jimple.
+ * <p>
+ * The framework calls the listeners an app registers, so a callback method of the slice is reached from the
+ * methods that pass a listener for a parameter typed by its callback interface, e.g. to setOnClickListener.
+ * These registration sites are indexed as well and join the slice, so that {@link AndroidCGExtender} finds
+ * them with a body and links them to their callbacks in the slice.
+ * <p>
+ * Only call sites in the dex files of the APK are searched, so a target reached through a method of the
+ * extra library jars only is missed. The implicit edges of Soot's call graph, e.g. for threads, are not
+ * built, as the path search does not follow them.
+ * <p>
+ * The same index gives the summary edges of the code a {@link PackageFilter} leaves out of the call graph.
+ */
+public class DemandCallGraph {
+    private static final String TAG = DemandCallGraph.class.getSimpleName();
+
+    // callee sub-signature -> the call sites invoking it
+    private final Map<String, List<CallSite>> callSites;
+    // callback interface -> the signatures of the methods passing a listener for a parameter of its type
+    private final Map<String, Set<String>> registrations;
+    private final int methodCount;
+
+    private static class CallSite {
+        final String calleeClass;   // the class of the method reference
+        final String caller;        // the signature of the calling method
+
+        CallSite(String calleeClass, String caller) {
+            this.calleeClass = calleeClass;
+            this.caller = caller;
+        }
+    }
+
+    private DemandCallGraph(Map<String, List<CallSite>> callSites, Map<String, Set<String>> registrations,
+                            int methodCount) {
+        this.callSites = callSites;
+        this.registrations = registrations;
+        this.methodCount = methodCount;
+    }
+
+    /**
+     * Method: index
+     * Description: Index the call sites of all dex files of an APK.
+     * @param apk the APK file
+     * @return the index
+     * @throws IOException if the APK or its dex files cannot be read
+     */
+    public static DemandCallGraph index(File apk) throws IOException {
+        Map<String, List<CallSite>> callSites = new HashMap<>();
+        Map<String, Set<String>> registrations = new HashMap<>();
+        Set<String> interfaces = CallbackRegistry.v().getInterfaces();
+        int[] methodCount = {0};
+
+        MethodHashes.forEachClass(apk, (className, classDef) -> {
+            for (Method method : classDef.getMethods()) {
+                if (method.getImplementation() == null) {
+                    continue;
+                }
+                methodCount[0]++;
+                String caller = MethodHashes.signatureOf(className, method);
+                Set<MethodReference> invoked = new HashSet<>();
+                for (Instruction instruction : method.getImplementation().getInstructions()) {
+                    if (instruction instanceof ReferenceInstruction
+                            && ((ReferenceInstruction) instruction).getReference() instanceof MethodReference) {
+                        invoked.add((MethodReference) ((ReferenceInstruction) instruction).getReference());
+                    }
+                }
+                for (MethodReference callee : invoked) {
+                    String subSignature = MethodHashes.subSignatureOf(callee);
+                    List<CallSite> sites = callSites.get(subSignature);
+                    if (sites == null) {
+                        sites = new ArrayList<>();
+                        callSites.put(subSignature, sites);
+                    }
+                    sites.add(new CallSite(MethodHashes.javaTypeOf(callee.getDefiningClass()), caller));
+
+                    for (CharSequence parameterType : callee.getParameterTypes()) {
+                        String anInterface = MethodHashes.javaTypeOf(parameterType.toString());
+                        if (!interfaces.contains(anInterface)) {
+                            continue;
+                        }
+                        Set<String> registering = registrations.get(anInterface);
+                        if (registering == null) {
+                            registering = new HashSet<>();
+                            registrations.put(anInterface, registering);
+                        }
+                        registering.add(caller);
+                    }
+                }
+            }
+        });
+        return new DemandCallGraph(callSites, registrations, methodCount[0]);
+    }
+
+    /**
+     * Method: sliceTo
+     * Description: Search backwards from the targets for the app methods that may reach one of them,
+     * resolving the declaring types against the class hierarchy of the Scene. Unknown types are taken to be
+     * related to any type. The methods registering a listener reach the callback methods of its interface.
+     * @param targets the signatures of the target definitions
+     * @return the signatures of the methods of the slice, the targets not included
+     */
+    public Set<String> sliceTo(Collection<String> targets) {
+        return callersOf(targets, null);
+    }
+
+    // The methods that may reach one of [callees], only through excluded methods if [filter] is not null
+    private Set<String> callersOf(Collection<String> callees, PackageFilter filter) {
+        Set<String> callers = new HashSet<>();
+        Deque<String> work = new ArrayDeque<>(callees);
+        while (!work.isEmpty()) {
+            String callee = work.poll();
+            if (filter == null) {
+                for (String caller : registrationsOf(callee)) {
+                    if (callers.add(caller)) {
+                        work.add(caller);
+                    }
+                }
+            }
+            int colon = callee.indexOf(':');
+            List<CallSite> sites = callSites.get(callee.substring(colon + 2, callee.length() - 1));
+            if (sites == null) {
+                continue;
+            }
+            SootClass calleeClass = Scene.v().getSootClassUnsafe(callee.substring(1, colon), false);
+            for (CallSite site : sites) {
+                if (callers.contains(site.caller)
+                        || filter != null && !filter.isExcluded(site.caller.substring(1, site.caller.indexOf(':')))) {
+                    continue;
+                }
+                if (mayDispatch(Scene.v().getSootClassUnsafe(site.calleeClass, false), calleeClass)) {
+                    callers.add(site.caller);
+                    work.add(site.caller);
+                }
+            }
+        }
+        return callers;
+    }
+
+    // The methods registering a listener whose callback interface declares [callee], a method signature
+    private Set<String> registrationsOf(String callee) {
+        if (registrations.isEmpty()) {
+            return Collections.emptySet();
+        }
+        SootMethod method = Scene.v().grabMethod(callee);
+        if (method == null || method.isStatic()) {
+            return Collections.emptySet();
+        }
+        Set<String> registering = new HashSet<>();
+        CallbackRegistry registry = CallbackRegistry.v();
+        for (Map.Entry<String, Set<String>> entry : registrations.entrySet()) {
+            SootClass anInterface = Scene.v().getSootClassUnsafe(entry.getKey(), false);
+            if (anInterface != null && TypeHierarchy.v().isSubtype(method.getDeclaringClass(), anInterface)
+                    && registry.callbackSubSignaturesOf(anInterface).contains(method.getSubSignature())) {
+                registering.addAll(entry.getValue());
+            }
+        }
+        return registering;
+    }
+
+    // Whether a call through a reference to [referenced] may end in a method declared by [declaring]
+    private static boolean mayDispatch(SootClass referenced, SootClass declaring) {
+        if (referenced == null || declaring == null) {
+            return true;
+        }
+        TypeHierarchy hierarchy = TypeHierarchy.v();
+        return hierarchy.isSubtype(declaring, referenced) || hierarchy.isSubtype(referenced, declaring);
+    }
+
+    /**
+     * Method: build
+     * Description: Build the call graph of the slice: every edge out of the dummy main method, and the edges
+     * of the slice into the slice or to a target.
+     * @param dummyMain the dummy main method calling the entry points
+     * @param slice the signatures of the methods of the slice
+     * @return the call graph
+     */
+    public CallGraph build(SootMethod dummyMain, Set<String> slice) {
+        return buildOf(dummyMain, methodsOf(slice));
+    }
+
+    private static CallGraph buildOf(SootMethod dummyMain, Set<SootMethod> methods) {
+        FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+        CallGraph callGraph = new CallGraph();
+        for (Edge edge : ChaEdges.outOf(dummyMain, hierarchy)) {
+            callGraph.addEdge(edge);
+        }
+        for (SootMethod method : methods) {
+            for (Edge edge : ChaEdges.outOf(method, hierarchy)) {
+                if (methods.contains(edge.tgt()) || MethodUtils.isTarget(edge.tgt())) {
+                    callGraph.addEdge(edge);
+                }
+            }
+        }
+        return callGraph;
+    }
+
+    private static Set<SootMethod> methodsOf(Set<String> slice) {
+        Set<SootMethod> methods = new HashSet<>();
+        for (String signature : slice) {
+            SootMethod method = Scene.v().grabMethod(signature);
+            if (method != null) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Method: apply
+     * Description: Build the call graph of the slice between the entry points and the target definitions
+     * of MethodUtils, and set it as the call graph of the Scene.
+     * @param dummyMain the dummy main method calling the entry points
+     * @return the methods of the slice, the targets not included
+     */
+    public Set<SootMethod> apply(SootMethod dummyMain) {
+        Set<String> slice = sliceTo(MethodUtils.getTargetDefs());
+        Set<SootMethod> methods = methodsOf(slice);
+        CallGraph callGraph = buildOf(dummyMain, methods);
+
+        Scene.v().setCallGraph(callGraph);
+        MethodUtils.invalidateCompactCallGraph();
+        Statistics.setCount("sliceMethods", slice.size());
+        Log.msg(TAG, "Built the call graph of %d of %d methods (%d edges) from the targets", slice.size(),
+                methodCount, callGraph.size());
+        return methods;
+    }
+
+    /**
+     * Method: addSummaryEdges
+     * Description: Model the excluded code of [filter], which has no call edges, by an edge from each excluded
+     * method to every target it reaches through excluded methods only. The calls of excluded code back into
+     * the app are not modeled.
+     * @param callGraph the call graph to extend
+     * @param targets the signatures of the target definitions
+     * @param filter the filter the call graph was built with
+     * @return the number of edges added
+     */
+    public int addSummaryEdges(CallGraph callGraph, Collection<String> targets, PackageFilter filter) {
+        int added = 0;
+        for (String signature : targets) {
+            SootMethod target = Scene.v().grabMethod(signature);
+            if (target == null) {
+                continue;
+            }
+            for (String caller : callersOf(Collections.singleton(signature), filter)) {
+                SootMethod method = Scene.v().grabMethod(caller);
+                if (method != null && !hasEdge(callGraph, method, target)) {
+                    callGraph.addEdge(new Edge(method, null, target, Kind.VIRTUAL));
+                    added++;
+                }
+            }
+        }
+        Statistics.setCount("summaryEdges", added);
+        Log.msg(TAG, "Added %d summary edges from excluded code to the targets", added);
+        return added;
+    }
+
+    private static boolean hasEdge(CallGraph callGraph, SootMethod source, SootMethod target) {
+        for (Iterator<Edge> edges = callGraph.edgesOutOf(source); edges.hasNext(); ) {
+            if (edges.next().tgt() == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
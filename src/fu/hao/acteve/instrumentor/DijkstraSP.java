@@ -7,6 +7,7 @@ package fu.hao.acteve.instrumentor;
  */
 
 import fu.hao.utils.IndexMinPQ;
+import fu.hao.utils.Log;
 import soot.MethodOrMethodContext;
 import soot.SootMethod;
 import soot.jimple.toolkits.callgraph.CallGraph;
@@ -34,6 +35,8 @@ import java.util.*;
  *  @author Kevin Wayne
  */
 public class DijkstraSP {
+    private static final String TAG = DijkstraSP.class.getSimpleName();
+
     Map<SootMethod, Integer> vertices;
     private Map<SootMethod, Integer> distTo;
     //private double[] distTo;          // distTo[v] = distance of shortest s->v path
@@ -152,7 +155,7 @@ public class DijkstraSP {
     private boolean check(CallGraph callGraph, SootMethod s) {
         // check that distTo[v] and edgeTo[v] are consistent
         if (distTo.get(s) != 0.0 || edgeTo.get(s) != null) {
-            System.err.println("distTo[s] and edgeTo[s] inconsistent");
+            Log.warn(TAG, "distTo[s] and edgeTo[s] inconsistent");
             return false;
         }
         for (SootMethod v : vertices.keySet()) {
@@ -160,7 +163,7 @@ public class DijkstraSP {
                 continue;
             }
             if (edgeTo.get(v) == null && distTo.get(v) != Double.POSITIVE_INFINITY) {
-                System.err.println("distTo[] and edgeTo[] inconsistent");
+                Log.warn(TAG, "distTo[] and edgeTo[] inconsistent");
                 return false;
             }
         }
@@ -173,7 +176,7 @@ public class DijkstraSP {
                 Edge e = edges.next();
                 SootMethod w = e.tgt();
                 if (distTo.get(v) + 1< distTo.get(w)) {
-                    System.err.println("edge " + e + " not relaxed");
+                    Log.warn(TAG, "edge %s not relaxed", e);
                     return false;
                 }
             }
@@ -192,7 +195,7 @@ public class DijkstraSP {
             }
 
             if (distTo.get(v) + 1 != distTo.get(w)) {
-                System.err.println("edge " + e + " on shortest path not tight");
+                Log.warn(TAG, "edge %s on shortest path not tight", e);
                 return false;
             }
         }
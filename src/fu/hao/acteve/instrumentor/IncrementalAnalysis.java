@@ -0,0 +1,332 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import soot.FastHierarchy;
+import soot.Scene;
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Description: Re-analyzes a new version of an app from the call graph and result of its previous version.
+ * <p>
+ * The state of the last analyzed version of each package is kept in {@code <directory>/<package>.*}: the
+ * {@link MethodHashes} of its APK, its call graph as a {@link CompactCallGraph} snapshot and its
+ * {@link AnalysisResult}. If the new APK declares the same classes and methods and only method bodies
+ * changed, the class hierarchy is the same, so the CHA call graph only differs in the edges out of the
+ * changed methods. Those edges are recomputed from the new bodies, together with the edges out of methods
+ * that only become reachable through them, and every other edge is taken from the snapshot. Only entries
+ * that reached a changed method before need their paths searched again, as the reachable part of the call
+ * graph of any other entry is unchanged, and with it its paths.
+ * <p>
+ * Every edge out of a changed method is dropped, but only its explicit call edges and static initializer
+ * edges are recomputed, so it loses its other implicit edges, e.g. for threads or finalizers, which the path
+ * search does not follow anyway. Any other change to the APK, or a different configuration, falls back to a
+ * full analysis.
+ */
+public class IncrementalAnalysis {
+    private static final String TAG = IncrementalAnalysis.class.getSimpleName();
+
+    private static final int MAGIC = 0x494e4352;   // "INCR"
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private final String packageName;
+    private final String configurationKey;
+    private final MethodHashes hashes;
+
+    // The previous version, null unless only method bodies changed since
+    private Set<String> changedMethods = null;
+    private CompactCallGraph previousGraph = null;
+    private AnalysisResult previousResult = null;
+    private boolean patched = false;
+
+    private IncrementalAnalysis(File directory, String packageName, String configurationKey, MethodHashes hashes) {
+        this.directory = directory;
+        this.packageName = packageName;
+        this.configurationKey = configurationKey;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Method: open
+     * Description: Hash the methods of [apk] and compare them with the stored state of the previous version
+     * of its package.
+     * @param directory where the state of each package is stored
+     * @param apk the new APK
+     * @param configuration everything besides the APK that the result depends on
+     * @return the incremental analysis, applicable if the previous version can be patched
+     * @throws IOException if the APK cannot be read
+     */
+    public static IncrementalAnalysis open(File directory, File apk, String configuration) throws IOException {
+        String packageName = ManifestModel.fromApk(apk).getPackageName();
+        IncrementalAnalysis incremental = new IncrementalAnalysis(directory, packageName,
+                AnalysisCache.keyOf("", configuration), MethodHashes.of(apk));
+        incremental.loadPrevious();
+        return incremental;
+    }
+
+    private File fileOf(String extension) {
+        return new File(directory, packageName + extension);
+    }
+
+    private void loadPrevious() {
+        File hashFile = fileOf(".hashes");
+        if (!hashFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(hashFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(configurationKey)) {
+                Log.msg(TAG, "The previous version of %s was analyzed differently, analyzing it fully", packageName);
+                return;
+            }
+            Set<String> changed = hashes.changedMethods(MethodHashes.read(in));
+            if (changed == null) {
+                Log.msg(TAG, "Classes or method declarations of %s changed, analyzing it fully", packageName);
+                return;
+            }
+            AnalysisResult result = new AnalysisCache(directory).get(packageName);
+            if (result == null) {
+                return;
+            }
+            previousGraph = CompactCallGraph.load(fileOf(".cg"));
+            previousResult = result;
+            changedMethods = changed;
+            Log.msg(TAG, "%d of %d methods of %s changed since the previous version", changed.size(),
+                    hashes.methodCount(), packageName);
+        } catch (IOException | RuntimeException e) {
+            Log.warn(TAG, "Ignoring unreadable state of %s: %s", packageName, e);
+        }
+    }
+
+    /**
+     * Returns whether the previous version can be patched, i.e. whether only method bodies changed.
+     */
+    public boolean isApplicable() {
+        return changedMethods != null;
+    }
+
+    /**
+     * Returns whether patchCallGraph() succeeded, so that paths can be reused.
+     */
+    public boolean isPatched() {
+        return patched;
+    }
+
+    /**
+     * Method: patchCallGraph
+     * Description: Build the call graph of the new version from the snapshot of the previous one and set
+     * it as the call graph of the Scene. The dummy main method is generated anew for every run, so its
+     * edges are always recomputed.
+     * @param dummyMain the dummy main method of the new version
+     * @return false if the previous version cannot be patched, and the call graph has to be built by Soot
+     */
+    public boolean patchCallGraph(SootMethod dummyMain) {
+        if (!isApplicable()) {
+            return false;
+        }
+        Set<SootMethod> changed = new HashSet<>();
+        for (String signature : changedMethods) {
+            SootMethod method = Scene.v().grabMethod(signature);
+            if (method == null) {
+                Log.msg(TAG, "%s is not in the Scene, analyzing %s fully", signature, packageName);
+                return false;
+            }
+            changed.add(method);
+        }
+        changed.add(dummyMain);
+
+        // The methods whose edges the snapshot has, i.e. those reachable from the dummy main method
+        BitSet reachable = new BitSet(previousGraph.size());
+        int root = previousGraph.idOf(dummyMain);
+        if (root >= 0) {
+            int[] queue = new int[previousGraph.size()];
+            int head = 0, tail = 0;
+            reachable.set(root);
+            queue[tail++] = root;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = previousGraph.outBegin(v); e < previousGraph.outEnd(v); e++) {
+                    int w = previousGraph.target(e);
+                    if (!reachable.get(w)) {
+                        reachable.set(w);
+                        queue[tail++] = w;
+                    }
+                }
+            }
+        }
+
+        CallGraph callGraph = new CallGraph();
+        int kept = 0;
+        for (int e = 0; e < previousGraph.edgeCount(); e++) {
+            SootMethod source = previousGraph.methodOf(previousGraph.source(e));
+            if (changed.contains(source)) {
+                continue;
+            }
+            callGraph.addEdge(new Edge(source, null, previousGraph.methodOf(previousGraph.target(e)),
+                    previousGraph.kind(e)));
+            kept++;
+        }
+
+        // Edges out of the changed methods, and out of the methods that only they reach
+        FastHierarchy hierarchy = Scene.v().getOrMakeFastHierarchy();
+        Deque<SootMethod> work = new ArrayDeque<>(changed);
+        Set<SootMethod> done = new HashSet<>(changed);
+        int added = 0;
+        while (!work.isEmpty()) {
+            SootMethod method = work.poll();
+            for (Edge edge : ChaEdges.outOf(method, hierarchy)) {
+                callGraph.addEdge(edge);
+                added++;
+                SootMethod target = edge.tgt();
+                int w = previousGraph.idOf(target);
+                if ((w < 0 || !reachable.get(w)) && done.add(target)) {
+                    work.add(target);
+                }
+            }
+        }
+
+        Scene.v().setCallGraph(callGraph);
+        MethodUtils.invalidateCompactCallGraph();
+        patched = true;
+        Log.msg(TAG, "Patched the call graph of %s: %d edges kept, %d recomputed from %d methods", packageName,
+                kept, added, done.size());
+        return true;
+    }
+
+    /**
+     * Method: affectedEntries
+     * Description: Select the entries whose paths may have changed: the new entries, and those from which
+     * a changed method was reachable in the previous version. If the previous result was truncated, its
+     * paths may be missing some of any entry, so every entry is affected.
+     * @param entries the entry points of the new version
+     * @return the affected entries, in the order of [entries]
+     */
+    public Set<SootMethod> affectedEntries(Collection<SootMethod> entries) {
+        if (previousResult.isTruncated()) {
+            return new LinkedHashSet<>(entries);
+        }
+        BitSet reachesChanged = new BitSet(previousGraph.size());
+        int[] queue = new int[previousGraph.size()];
+        int head = 0, tail = 0;
+        for (int v = 0; v < previousGraph.size(); v++) {
+            if (changedMethods.contains(previousGraph.signatureOf(v))) {
+                reachesChanged.set(v);
+                queue[tail++] = v;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = previousGraph.inBegin(v); i < previousGraph.inEnd(v); i++) {
+                int u = previousGraph.source(previousGraph.inEdge(i));
+                if (!reachesChanged.get(u)) {
+                    reachesChanged.set(u);
+                    queue[tail++] = u;
+                }
+            }
+        }
+
+        Set<String> previousEntries = new HashSet<>(previousResult.getEntryPoints());
+        Set<SootMethod> affected = new LinkedHashSet<>();
+        for (SootMethod entry : entries) {
+            int v = previousGraph.idOf(entry);
+            if (!previousEntries.contains(entry.getSignature()) || v < 0 || reachesChanged.get(v)) {
+                affected.add(entry);
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Method: mergePaths
+     * Description: Merge the new paths of the affected entries with the previous paths of the others,
+     * grouped by entry in the order of [entries].
+     * @param entries the entries reaching a target, in the order the paths should have
+     * @param affected the entries whose paths were searched again
+     * @param paths the new paths of the affected entries
+     * @return the paths of all entries as method signatures
+     */
+    public List<List<String>> mergePaths(List<SootMethod> entries, Set<SootMethod> affected,
+                                         List<List<SootMethod>> paths) {
+        Map<String, List<List<String>>> byEntry = new HashMap<>();
+        for (List<String> path : previousResult.getPaths()) {
+            pathsOf(byEntry, path.get(0)).add(path);
+        }
+        Map<String, List<List<String>>> newByEntry = new HashMap<>();
+        for (List<SootMethod> path : paths) {
+            pathsOf(newByEntry, path.get(0).getSignature()).add(AnalysisResult.signaturesOf(path));
+        }
+
+        List<List<String>> merged = new ArrayList<>();
+        for (SootMethod entry : entries) {
+            List<List<String>> entryPaths = (affected.contains(entry) ? newByEntry : byEntry).get(entry.getSignature());
+            if (entryPaths != null) {
+                merged.addAll(entryPaths);
+            }
+        }
+        return merged;
+    }
+
+    private static List<List<String>> pathsOf(Map<String, List<List<String>>> byEntry, String entry) {
+        List<List<String>> paths = byEntry.get(entry);
+        if (paths == null) {
+            paths = new ArrayList<>();
+            byEntry.put(entry, paths);
+        }
+        return paths;
+    }
+
+    /**
+     * Method: save
+     * Description: Store the call graph and result of this version as the previous version of its package.
+     * The hashes are written last, so an interrupted save leaves no state that refers to the wrong files.
+     * Failures are logged, as the state is only an optimization.
+     * @param callGraph the call graph of this version
+     * @param result the result of this version
+     */
+    public void save(CompactCallGraph callGraph, AnalysisResult result) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.warn(TAG, "Cannot create %s", directory);
+            return;
+        }
+        File hashFile = fileOf(".hashes");
+        File tmp = fileOf(".hashes.tmp");
+        hashFile.delete();
+        try {
+            callGraph.save(fileOf(".cg"));
+            new AnalysisCache(directory).put(packageName, result);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(configurationKey);
+                hashes.write(out);
+            }
+            if (!tmp.renameTo(hashFile)) {
+                throw new IOException("cannot rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.warn(TAG, "Cannot save the state of %s: %s", packageName, e.getMessage());
+            tmp.delete();
+        }
+    }
+}
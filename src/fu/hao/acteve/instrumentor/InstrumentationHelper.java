@@ -1,22 +1,16 @@
 package fu.hao.acteve.instrumentor;
 
 import fu.hao.utils.Log;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.*;
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -27,7 +21,9 @@ import java.util.Set;
 public class InstrumentationHelper {
     private String TAG = this.getClass().getSimpleName();
 
-    private String manifest, packagename;
+    private ManifestModel manifest;
+
+    private String packagename;
 
     private Set<String> mainActivities;
 
@@ -71,58 +67,32 @@ public class InstrumentationHelper {
         uiListeners = aMap;
     };
 
+    /**
+     * Returns the UI listener interfaces and their callback sub-signatures, as written above.
+     */
+    static Map<String, String[]> getUiListeners() {
+        return Collections.unmodifiableMap(uiListeners);
+    }
+
     /**
      *
      * @param apkFile
      *            APK File to load
-     * @throws IOException
-     * @throws InterruptedException
-     * @throws ParserConfigurationException
-     * @throws SAXException
-     * @throws XPathExpressionException
+     * @throws IOException if the APK or its manifest cannot be read
      */
-    public InstrumentationHelper(File apkFile) throws IOException, InterruptedException, ParserConfigurationException,
-            SAXException, XPathExpressionException {
-        mainActivities = new HashSet<>();
-        // unpack
-        Log.debug(TAG, "Decoding " + apkFile.getAbsolutePath());
-        String cmd = "java -jar tools/apktool.jar d -s -f " + apkFile.getAbsolutePath() + " -o decoded";
-        Process p = Runtime.getRuntime().exec(cmd);
-        int processExitCode = p.waitFor();
-        if (processExitCode != 0) {
-            throw new RuntimeException("Something went wrong during unpacking");
-        }
-        BufferedReader br = new BufferedReader(new FileReader("decoded/AndroidManifest.xml"));
-        StringBuffer sb = new StringBuffer();
-        String line = "";
-        while ((line = br.readLine()) != null) {
-            sb.append(line);
-            sb.append("\n");
-        }
-        br.close();
-        manifest = sb.toString();
-
-        // Do some XML parsing
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(new ByteArrayInputStream(manifest.getBytes()));
-        doc.getDocumentElement().normalize();
-
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        XPathExpression expr1 = xpath.compile("//manifest/@package");
-        NodeList nodes = (NodeList)expr1.evaluate(doc, XPathConstants.NODESET);
-        packagename = ((Attr) nodes.item(0)).getValue();
+    public InstrumentationHelper(File apkFile) throws IOException {
+        // Read the binary manifest straight from the APK, no apktool run and nothing written to disk
+        Log.debug(TAG, "Reading the manifest of %s", apkFile.getAbsolutePath());
+        manifest = ManifestModel.fromApk(apkFile);
+        packagename = manifest.getPackageName();
+        mainActivities = new LinkedHashSet<>(manifest.getMainActivities());
+    }
 
-        xpath = XPathFactory.newInstance().newXPath();
-        expr1 = xpath.compile("//manifest/application/activity[intent-filter/action[@name='android.intent.action.MAIN']]/@name");
-        nodes = (NodeList)expr1.evaluate(doc, XPathConstants.NODESET);
-        for (int i=0;i<nodes.getLength();i++) {
-            Node n = nodes.item(i);
-            String classname = ((Attr) n).getValue();
-            if (classname.startsWith("."))
-                classname = packagename + classname;
-            mainActivities.add(classname);
-        }
+    /**
+     * Returns the components of the app as declared in its manifest.
+     */
+    public ManifestModel getManifest() {
+        return manifest;
     }
 
     public SootMethod getDefaultOnResume() {
@@ -2,7 +2,7 @@ package fu.hao.acteve.instrumentor;
 
 import fu.hao.utils.Log;
 import fu.hao.utils.Settings;
-import org.xml.sax.SAXException;
+import fu.hao.utils.Statistics;
 import soot.*;
 import soot.jimple.infoflow.android.SetupApplication;
 import soot.jimple.infoflow.android.data.AndroidMethod;
@@ -11,8 +11,6 @@ import soot.jimple.toolkits.callgraph.Edge;
 import soot.options.Options;
 import soot.util.Chain;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
@@ -32,11 +30,14 @@ public class Main extends SceneTransformer {
     private final static String androidJAR = "C:/Users/hao/Downloads/android-sdk-windows/platforms"; //required for CH resolution
     private final static String modelClasses = "D:/workspace/ConDroid/mymodels/src";
     private static InstrumentationHelper instrumentationHelper;
+    private static PackageFilter packageFilter = null;
+    private static String sootOptions = "";     // The options of setSootOptions() the call graph depends on
     private static Set<SootMethod> methodsToInstrument = new HashSet<>();
 
     private static boolean SKIP_CONCOLIC_INSTRUMENTATION = false;
     private static boolean SKIP_ALL_INSTRUMENTATION = false;        // Switch off all instrumentation for debugging
     private static boolean SKIP_CG_EXTENTION = false;                    // Extends the CG by direct calls to callbacks
+    private static boolean FIND_ALL_PATHS = true;                        // Enumerate all paths instead of the shortest ones
 
     /**
      * Method: main
@@ -48,60 +49,225 @@ public class Main extends SceneTransformer {
      * Authors：Hao Fu(haofu@ucdavis.edu)
      * Date: 2016/10/5 16:41
      */
-    public static void main(String[] args) throws XPathExpressionException, IOException, InterruptedException, ParserConfigurationException, SAXException {
+    public static void main(String[] args) throws IOException {
         Settings.setLogLevel(0);
 
+        // Optional sources and sinks catalog, whose sinks replace the default targets
+        if (args.length > 1) {
+            Settings.setTargetCatalog(args[1]);
+        }
+        loadTargetCatalog();
+        CallbackRegistry.v();
+
+        analyze(args[0]);
+    }
+
+    /**
+     * Method: loadTargetCatalog
+     * Description: Replace the default targets by the sinks of Settings.getTargetCatalog(), if set.
+     */
+    public static void loadTargetCatalog() throws IOException {
+        if (Settings.getTargetCatalog() != null) {
+            SourcesAndSinks sourcesAndSinks = SourcesAndSinks.load(new File(Settings.getTargetCatalog()));
+            Settings.setTargetMethods(sourcesAndSinks.getSinks());
+            Log.msg(TAG, "Loaded %d sinks from %s", sourcesAndSinks.getSinks().size(), Settings.getTargetCatalog());
+        }
+    }
+
+    /**
+     * Method: analyze
+     * Description: Run the whole pipeline on one APK, starting from a fresh Soot. The per-app state of this
+     * class and of MethodUtils is reset first, so that it can be called for many APKs in one JVM.
+     */
+    public static AnalysisResult analyze(String apkPath) throws IOException {
+        Statistics.startAnalysis(apkPath);
+        boolean complete = false;
+        try {
+            AnalysisResult result = analyzeApk(apkPath);
+            complete = true;
+            return result;
+        } finally {
+            writeStatistics(apkPath, complete);
+        }
+    }
+
+    private static AnalysisResult analyzeApk(String apkPath) throws IOException {
         soot.G.reset();
-        apk = args[0];
+        apk = apkPath;
+        instrumentationHelper = null;
+        packageFilter = null;
+        methodsToInstrument.clear();
+        MethodUtils.invalidateCompactCallGraph();
+
+        // Read the options back from what setSootOptions() sets, so that the cache keys follow any change to it
+        setSootOptions();
+        sootOptions = describeSootOptions();
+        soot.G.reset();
+
+        // An unchanged APK analyzed with the same configuration skips Soot entirely
+        AnalysisCache analysisCache = null;
+        String cacheKey = null;
+        String apkHash = null;
+        if (Settings.isAnalysisCacheEnabled() || Settings.isCallGraphSnapshotEnabled()) {
+            apkHash = AnalysisCache.hashOf(new File(apk));
+        }
+        if (Settings.isAnalysisCacheEnabled()) {
+            analysisCache = new AnalysisCache(new File(Settings.getCacheDirectory()));
+            cacheKey = AnalysisCache.keyOf(apkHash, getConfiguration());
+            AnalysisResult cached = analysisCache.get(cacheKey);
+            if (cached != null) {
+                Log.msg(TAG, "Reusing the cached analysis result %s", cacheKey);
+                Log.msg(TAG, "Found the following target methods:");
+                for (String target : cached.getTargets()) {
+                    Log.msg(TAG, target);
+                }
+                logPaths(cached);
+                ResultSink sink = openResultSink();
+                if (sink != null) {
+                    try {
+                        sink.result(cached);
+                        sink.end();
+                    } finally {
+                        sink.close();
+                    }
+                }
+                return cached;
+            }
+        }
 
         Options.v().set_soot_classpath("tools/android-19.jar;"
                 + libJars + ";"
                 //+ modelClasses + ";"
                 + apk);
+        packageFilter = Settings.isPackageFilterEnabled()
+                ? PackageFilter.forApp(ManifestModel.fromApk(new File(apk)).getPackageName()) : null;
 
         // inject correct dummy main:
-        SetupApplication setupApplication = new SetupApplication(androidJAR, apk);
-
+        // A phase that throws is still ended, so the report of the failed run has its numbers
+        Statistics.start(Statistics.Phase.ENTRY_POINTS);
+        SetupApplication setupApplication;
         try {
-            /** ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! !
-             *  ! NOTE: calculateSourcesSinksEntrypoints() calls soot.G.reset()
-             *  , i.e. it clears all global settings! ! ! ! ! ! ! ! ! ! ! ! ! !
-             */
-            setupApplication.calculateSourcesSinksEntrypoints(new HashSet<AndroidMethod>(), new HashSet<AndroidMethod>());
-            //setupApplication.calculateSourcesSinksEntrypoints("./SourcesAndSinks.txt");
-        } catch (Exception e) {
-            e.printStackTrace();
+            setupApplication = new SetupApplication(androidJAR, apk);
+            try {
+                /** ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! ! !
+                 *  ! NOTE: calculateSourcesSinksEntrypoints() calls soot.G.reset()
+                 *  , i.e. it clears all global settings! ! ! ! ! ! ! ! ! ! ! ! ! !
+                 */
+                setupApplication.calculateSourcesSinksEntrypoints(new HashSet<AndroidMethod>(), new HashSet<AndroidMethod>());
+                //setupApplication.calculateSourcesSinksEntrypoints("./SourcesAndSinks.txt");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        } finally {
+            Statistics.end(Statistics.Phase.ENTRY_POINTS);
         }
 
-        setSootOptions();
-        Scene.v().loadNecessaryClasses(); // The original version does not need this statement, do not know why
+        Statistics.start(Statistics.Phase.CLASS_LOADING);
+        try {
+            setSootOptions();
+            Scene.v().loadNecessaryClasses(); // The original version does not need this statement, do not know why
+        } finally {
+            Statistics.end(Statistics.Phase.CLASS_LOADING);
+        }
 
         //Create dummy main method referencing all entry points
-        SootMethod dummyMain = setupApplication.getEntryPointCreator().createDummyMain();
+        Statistics.start(Statistics.Phase.ENTRY_POINTS);
+        SootMethod dummyMain;
+        try {
+            dummyMain = setupApplication.getEntryPointCreator().createDummyMain();
+        } finally {
+            Statistics.end(Statistics.Phase.ENTRY_POINTS);
+        }
 
-        Scene.v().setEntryPoints(Collections.singletonList(dummyMain));
-        Scene.v().addBasicClass(dummyMain.getDeclaringClass().getName(), SootClass.BODIES);
-        Scene.v().loadNecessaryClasses();
+        Statistics.start(Statistics.Phase.CLASS_LOADING);
+        try {
+            Scene.v().setEntryPoints(Collections.singletonList(dummyMain));
+            Scene.v().addBasicClass(dummyMain.getDeclaringClass().getName(), SootClass.BODIES);
+            Scene.v().loadNecessaryClasses();
+        } finally {
+            Statistics.end(Statistics.Phase.CLASS_LOADING);
+        }
+        Statistics.setCount("classes", Scene.v().getClasses().size());
+
+        // The call graph does not depend on the targets, so a snapshot of it serves any of them
+        File snapshot = null;
+        if (Settings.isCallGraphSnapshotEnabled()) {
+            snapshot = new File(Settings.getCacheDirectory(),
+                    AnalysisCache.keyOf(apkHash, getCallGraphConfiguration()) + ".cg");
+        }
+        // A new version of an app analyzed before only has the edges out of its changed methods rebuilt
+        // The demand-driven call graph only covers the slice to the current targets, which cannot be patched
+        IncrementalAnalysis incremental = null;
+        if (Settings.isIncrementalEnabled() && !Settings.isDemandDriven()) {
+            incremental = IncrementalAnalysis.open(new File(Settings.getCacheDirectory(), "incremental"),
+                    new File(apk), getConfiguration());
+        }
+        Statistics.start(Statistics.Phase.CALL_GRAPH);
+        CompactCallGraph callGraph;
+        try {
+            if (!loadCallGraph(snapshot)) {
+                DemandCallGraph callSites = null;
+                Set<SootMethod> slice = null;
+                if (Settings.isDemandDriven() || packageFilter != null) {
+                    callSites = DemandCallGraph.index(new File(apk));
+                }
+                if (packageFilter != null) {
+                    packageFilter.stubExcludedBodies();
+                }
+                if (Settings.isDemandDriven()) {
+                    slice = callSites.apply(dummyMain);
+                } else if (incremental == null || !incremental.patchCallGraph(dummyMain)) {
+                    PackManager.v().getPack("cg").apply();
+                }
+                // Excluded code has no edges, but still calls the targets
+                if (packageFilter != null) {
+                    callSites.addSummaryEdges(Scene.v().getCallGraph(), MethodUtils.getTargetDefs(), packageFilter);
+                    MethodUtils.invalidateCompactCallGraph();
+                }
+                // The framework calls the listeners the app registers
+                if (!SKIP_CG_EXTENTION) {
+                    new AndroidCGExtender(CallbackRegistry.v(), slice).transform("wjtp.android");
+                }
+                saveCallGraph(snapshot);
+            }
+            callGraph = MethodUtils.getCompactCallGraph();
+        } finally {
+            Statistics.end(Statistics.Phase.CALL_GRAPH);
+        }
+        Statistics.setNumberOfNodes(callGraph.size());
+        Statistics.setNumberOfEdges(callGraph.edgeCount());
 
-        PackManager.v().getPack("cg").apply();
         // Step 1: Find all lifecycle entry points
-        Set<SootMethod> entryPoints = MethodUtils.getCalleesOf(dummyMain);
+        Statistics.start(Statistics.Phase.TARGETS);
+        Set<SootMethod> entryPoints;
+        Set<SootMethod> targetMethods;
+        try {
+            MethodUtils.buildTargetIndex();
+            entryPoints = MethodUtils.getCalleesOf(dummyMain);
 
-        if (Settings.isDebug()) {
-            for (SootMethod entry : entryPoints) {
-                Log.debug(TAG, "Found entry: " + entry);
+            if (Settings.isDebug()) {
+                for (SootMethod entry : entryPoints) {
+                    Log.debug(TAG, "Found entry: %s", entry);
+                }
             }
-        }
 
-        // Step 2: Find all target methods
-        Set<SootMethod> targetMethods = MethodUtils.findReachableTargets(entryPoints);
-        Log.msg(TAG, "Found the following target methods:");
-        for (SootMethod m : targetMethods){
-            Log.msg(TAG, m.getSignature());
+            // Step 2: Find all target methods
+            targetMethods = MethodUtils.findReachableTargets(entryPoints);
+        } finally {
+            Statistics.end(Statistics.Phase.TARGETS);
+        }
+        Statistics.setCount("entryPoints", entryPoints.size());
+        Statistics.setCount("targets", targetMethods.size());
+        if (Log.isEnabled(Log.MODE_MSG)) {
+            Log.msg(TAG, "Found the following target methods:");
+            for (SootMethod m : targetMethods) {
+                Log.msg(TAG, m.getSignature());
+            }
         }
 
         // Step 3: Get the paths from the entry points to the target methods
         List<List<SootMethod>> paths = new ArrayList<>();
+        boolean truncated = false;
         //
 
         //for (SootMethod target : targetMethods) {
@@ -158,60 +324,93 @@ public class Main extends SceneTransformer {
 
         //}
 
-        // Leverage Dijkstra to find the shortest path
-        // TODO All paths
-        for (SootMethod target : targetMethods) {
-            CallGraph subGraph = MethodUtils.findSubCGIn(target);
-
-            for (SootMethod entry : MethodUtils.getEntries(subGraph)) {
-                DijkstraSP dijkstraSP = new DijkstraSP(subGraph, entry);
-                // print shortest path
-                if (dijkstraSP.hasPathTo(target)) {
-                    List<SootMethod> path = new ArrayList<>();
-                    //Log.msg(TAG, entry.getSubSignature() + " to " + target.getSubSignature() + ": " + dijkstraSP.distTo(target));
-                    List<Edge> edgePath = dijkstraSP.pathTo(target);
-                    for (Edge e : edgePath) {
-                        //Log.msg(TAG, "Node: " + e );
-                        path.add(e.src());
+        // Search backwards from all targets at once for the nearest target of every entry
+        Statistics.start(Statistics.Phase.PATH_SEARCH);
+        ResultSink sink = null;
+        List<List<String>> mergedPaths = null;
+        try {
+            NearestTargetSP nearestTargets = new NearestTargetSP(MethodUtils.getCompactCallGraph(), targetMethods);
+            sink = openResultSink();
+            if (sink != null) {
+                sink.entries(AnalysisResult.sortedSignaturesOf(entryPoints));
+                sink.targets(AnalysisResult.sortedSignaturesOf(targetMethods));
+                sink.flush();
+            }
+            if (FIND_ALL_PATHS && incremental != null && incremental.isPatched()) {
+                // The paths of the entries that cannot reach a changed method are those of the previous version
+                Set<SootMethod> affected = incremental.affectedEntries(entryPoints);
+                Log.msg(TAG, "Searching the paths of %d of %d entries again", affected.size(), entryPoints.size());
+                PathDiscovery pathDiscovery = new PathDiscovery(nearestTargets, Settings.getThreads(),
+                        Settings.getMaxPathsPerEntry(), Settings.getMaxPathLength(), Settings.getMaxPathSteps());
+                mergedPaths = incremental.mergePaths(nearestTargets.entriesReachingTargets(entryPoints), affected,
+                        pathDiscovery.discover(affected, null));
+                truncated = pathDiscovery.isTruncated();
+                if (sink != null) {
+                    for (List<String> path : mergedPaths) {
+                        sink.path(path);
+                    }
+                }
+            } else if (FIND_ALL_PATHS) {
+                PathDiscovery pathDiscovery = new PathDiscovery(nearestTargets, Settings.getThreads(),
+                        Settings.getMaxPathsPerEntry(), Settings.getMaxPathLength(), Settings.getMaxPathSteps());
+                paths.addAll(pathDiscovery.discover(entryPoints, sink));
+                truncated = pathDiscovery.isTruncated();
+            } else {
+                paths.addAll(nearestTargets.pathsFrom(entryPoints));
+                if (sink != null) {
+                    for (List<SootMethod> path : paths) {
+                        sink.path(AnalysisResult.signaturesOf(path));
                     }
-                    path.add(edgePath.get(edgePath.size() - 1).tgt());
-                    paths.add(path);
-                } else {
-                    Log.err(TAG, "Error in searching for paths.");
                 }
-
-                //
-                //for (SootMethod t : dijkstraSP.getVertices().keySet()) {
-                //if (dijkstraSP.hasPathTo(t)) {
-                //Log.msg(TAG, entry.getSubSignature() + " to " + t.getSubSignature() + ": " + dijkstraSP.distTo(t));
-                //for (Edge e : dijkstraSP.pathTo(t)) {
-                //Log.msg(TAG, "Node: " + e );
-                //}
-                //} else {
-                //Log.msg(TAG, entry.getSubSignature() + " to " + t.getSubSignature() + "   no path");
-                //}
-                //}
-
             }
-        }
-
-        for (int i = 0; i < paths.size(); i++) {
-            List<SootMethod> path = paths.get(i);
-            Log.msg(TAG, "Path No." + i + ": " + path.get(0).getSubSignature() + " to " + path.get(path.size() - 1).getSubSignature());
-            for (SootMethod node : path) {
-                Log.msg(TAG, "node: " + node.getSignature());
+            // Only a search that got here marks its results complete
+            if (sink != null) {
+                sink.end();
+            }
+        } finally {
+            if (sink != null) {
+                sink.close();
             }
+            Statistics.end(Statistics.Phase.PATH_SEARCH);
+        }
+        AnalysisResult result;
+        if (mergedPaths != null) {
+            result = new AnalysisResult(AnalysisResult.sortedSignaturesOf(entryPoints),
+                    AnalysisResult.sortedSignaturesOf(targetMethods), mergedPaths, truncated);
+        } else {
+            result = AnalysisResult.of(entryPoints, targetMethods, paths, truncated);
+        }
+        Statistics.setCount("paths", result.getPaths().size());
+        logPaths(result);
+        // A result cut short by the caps would be served forever, the next run may get further
+        if (analysisCache != null && !result.isTruncated()) {
+            analysisCache.put(cacheKey, result);
+        } else if (analysisCache != null) {
+            Log.msg(TAG, "Not caching the result, its path enumeration stopped at the caps");
+        }
+        if (incremental != null) {
+            incremental.save(MethodUtils.getCompactCallGraph(), result);
         }
 
         // Get the lifecycle method to instrument
-        instrumentationHelper = new InstrumentationHelper(new File(apk));
+        Statistics.start(Statistics.Phase.MANIFEST);
+        try {
+            instrumentationHelper = new InstrumentationHelper(new File(apk));
+        } finally {
+            Statistics.end(Statistics.Phase.MANIFEST);
+        }
+        ManifestModel manifest = instrumentationHelper.getManifest();
+        Statistics.setCount("components", manifest.getActivities().size() + manifest.getServices().size()
+                + manifest.getReceivers().size() + manifest.getProviders().size());
         SootMethod lcMethodToExtend = instrumentationHelper.getDefaultOnResume();
         if (lcMethodToExtend == null) {
             lcMethodToExtend = instrumentationHelper.getDefaultOnCreate();
         }
 
         assert lcMethodToExtend != null : "No default activity found!";
-        Log.msg(TAG, "Method to be instrumented: " + lcMethodToExtend);
+        Log.msg(TAG, "Method to be instrumented: %s", lcMethodToExtend);
+
+        return result;
 
         /*
         //Register all application classes for instrumentation
@@ -247,6 +446,153 @@ public class Main extends SceneTransformer {
         }*/
     }
 
+    private static void logPaths(AnalysisResult result) {
+        if (!Log.isEnabled(Log.MODE_MSG)) {
+            return;
+        }
+        List<List<String>> paths = result.getPaths();
+        for (int i = 0; i < paths.size(); i++) {
+            List<String> path = paths.get(i);
+            Log.msg(TAG, "Path No.%d: %s to %s", i, AnalysisResult.subSignatureOf(path.get(0)),
+                    AnalysisResult.subSignatureOf(path.get(path.size() - 1)));
+            for (String node : path) {
+                Log.msg(TAG, "node: %s", node);
+            }
+        }
+    }
+
+    /**
+     * Method: writeStatistics
+     * Description: Write the metrics of the analysis of [apkPath] next to its results, as <apk>.stats.json.
+     * A failure to write them is only logged, so that it does not hide the outcome of the analysis.
+     */
+    private static void writeStatistics(String apkPath, boolean complete) {
+        if (!Settings.getGenerateStats()) {
+            return;
+        }
+        Log.msg(TAG, "Statistics: %s", Statistics.report(complete));
+        File directory = new File(Settings.getOutputDirectory());
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("cannot create " + directory);
+            }
+            Statistics.writeReport(new File(directory, new File(apkPath).getName() + ".stats.json"), complete);
+        } catch (IOException e) {
+            Log.warn(TAG, "Cannot write the statistics of %s: %s", apkPath, e.getMessage());
+        }
+    }
+
+    /**
+     * Method: openResultSink
+     * Description: Open the result file of the current APK in the output directory, named after the APK
+     * with the extension of Settings.getResultFormat(), and write its app record. Null if it is disabled.
+     */
+    private static ResultSink openResultSink() throws IOException {
+        if (Settings.getResultFormat() == null) {
+            return null;
+        }
+        File directory = new File(Settings.getOutputDirectory());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        ResultSink sink = ResultSink.open(new File(directory,
+                new File(apk).getName() + ".results." + Settings.getResultFormat()));
+        sink.app(apk);
+        return sink;
+    }
+
+    private static boolean loadCallGraph(File snapshot) {
+        if (snapshot == null || !snapshot.isFile()) {
+            return false;
+        }
+        try {
+            CompactCallGraph callGraph = CompactCallGraph.load(snapshot);
+            MethodUtils.useCompactCallGraph(callGraph);
+            Log.msg(TAG, "Loaded the call graph (%d methods, %d edges) from %s", callGraph.size(),
+                    callGraph.edgeCount(), snapshot);
+            return true;
+        } catch (IOException e) {
+            Log.warn(TAG, "Ignoring unreadable call graph snapshot %s: %s", snapshot, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void saveCallGraph(File snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        File directory = snapshot.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Log.warn(TAG, "Cannot create cache directory %s", directory);
+            return;
+        }
+        try {
+            MethodUtils.getCompactCallGraph().save(snapshot);
+        } catch (IOException e) {
+            Log.warn(TAG, "Cannot write call graph snapshot %s: %s", snapshot, e.getMessage());
+        }
+    }
+
+    /**
+     * Method: getCallGraphConfiguration
+     * Description: Everything besides the APK that the call graph depends on, for the call graph snapshot.
+     * The Soot options are read back from setSootOptions(); keep it in sync with the switches above.
+     */
+    private static String getCallGraphConfiguration() {
+        StringBuilder configuration = new StringBuilder();
+        configuration.append("androidJAR=").append(androidJAR).append('\n')
+                .append("libJars=").append(libJars).append('\n')
+                .append("soot=").append(sootOptions).append('\n');
+        if (Settings.isDemandDriven()) {
+            configuration.append("demandDriven\n");
+        }
+        if (!SKIP_CG_EXTENTION) {
+            configuration.append("cgExtension\n");
+        }
+        if (Settings.isPackageFilterEnabled()) {
+            configuration.append("packageFilter=").append(PackageFilter.configuration()).append('\n');
+        }
+        // The slice and the summary edges depend on the targets
+        if (isCallGraphOfTargets()) {
+            appendTargets(configuration);
+        }
+        return configuration.toString();
+    }
+
+    /**
+     * Method: getConfiguration
+     * Description: Everything besides the APK that the analysis result depends on, for the analysis cache.
+     * Keep it in sync with the switches above.
+     */
+    private static String getConfiguration() {
+        StringBuilder configuration = new StringBuilder(getCallGraphConfiguration());
+        configuration.append("allPaths=").append(FIND_ALL_PATHS).append(',').append(Settings.getMaxPathsPerEntry())
+                .append(',').append(Settings.getMaxPathLength()).append(',').append(Settings.getMaxPathSteps()).append('\n');
+        if (!isCallGraphOfTargets()) {
+            appendTargets(configuration);
+        }
+        return configuration.toString();
+    }
+
+    private static boolean isCallGraphOfTargets() {
+        return Settings.isDemandDriven() || Settings.isPackageFilterEnabled();
+    }
+
+    private static void appendTargets(StringBuilder configuration) {
+        List<String> targets = new ArrayList<>(MethodUtils.getTargetDefs());
+        Collections.sort(targets);
+        for (String target : targets) {
+            configuration.append("target=").append(target).append('\n');
+        }
+    }
+
+    private static String describeSootOptions() {
+        Options options = Options.v();
+        return "whole-program=" + options.whole_program() + ",no-bodies-for-excluded="
+                + options.no_bodies_for_excluded() + ",allow-phantom-refs=" + options.allow_phantom_refs()
+                + ",src-prec=" + options.src_prec() + ",cg=" + new TreeMap<>(PhaseOptions.v().getPhaseOptions("cg"));
+    }
+
     private static void setSootOptions() {
         //restore the class path because of soot.G.reset() in calculateSourcesSinksEntrypoints:
         Options.v().set_soot_classpath("tools/android-19.jar;" + libJars + ";"
@@ -257,6 +603,9 @@ public class Main extends SceneTransformer {
                 + apk);
 
         Options.v().set_no_bodies_for_excluded(true);
+        if (packageFilter != null) {
+            packageFilter.setSootOptions();
+        }
         Options.v().set_src_prec(Options.src_prec_apk);
 
         Options.v().set_whole_program(true);    //Implicitly "on" when instrumenting Android, AFAIR.
@@ -0,0 +1,382 @@
+package fu.hao.acteve.instrumentor;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Immutable model of an AndroidManifest.xml: the package and the activities, services,
+ * receivers and providers of the application, each with its android: attributes and intent filters.
+ * <p>
+ * The model is built in a single streaming pass, either over the binary manifest of an APK with an
+ * {@link AxmlParser}, or over a text manifest (e.g. decoded by apktool) with StAX. No tree of the
+ * document is kept, only the components. Component names are fully qualified, i.e. ".Foo" and "Foo"
+ * are resolved against the package as Android does.
+ */
+public class ManifestModel {
+    public static final String ACTION_MAIN = "android.intent.action.MAIN";
+    public static final String CATEGORY_LAUNCHER = "android.intent.category.LAUNCHER";
+
+    private static final int ANDROID_NAME_ID = 0x01010003;    // resource ID of android:name
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    private final String packageName;
+    private final List<Component> activities;
+    private final List<Component> services;
+    private final List<Component> receivers;
+    private final List<Component> providers;
+
+    private ManifestModel(String packageName, List<Component> activities, List<Component> services,
+                          List<Component> receivers, List<Component> providers) {
+        this.packageName = packageName;
+        this.activities = Collections.unmodifiableList(activities);
+        this.services = Collections.unmodifiableList(services);
+        this.receivers = Collections.unmodifiableList(receivers);
+        this.providers = Collections.unmodifiableList(providers);
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public List<Component> getActivities() {
+        return activities;
+    }
+
+    public List<Component> getServices() {
+        return services;
+    }
+
+    public List<Component> getReceivers() {
+        return receivers;
+    }
+
+    public List<Component> getProviders() {
+        return providers;
+    }
+
+    /**
+     * Returns the names of the activities with an intent filter for {@code android.intent.action.MAIN},
+     * in manifest order.
+     */
+    public List<String> getMainActivities() {
+        List<String> mainActivities = new ArrayList<>();
+        for (Component activity : activities) {
+            if (activity.hasAction(ACTION_MAIN)) {
+                mainActivities.add(activity.getName());
+            }
+        }
+        return mainActivities;
+    }
+
+    /**
+     * An activity, service, receiver or provider.
+     */
+    public static class Component {
+        private final String name;
+        private final Map<String, String> attributes;
+        private final List<IntentFilter> intentFilters;
+
+        private Component(String name, Map<String, String> attributes, List<IntentFilter> intentFilters) {
+            this.name = name;
+            this.attributes = Collections.unmodifiableMap(attributes);
+            this.intentFilters = Collections.unmodifiableList(intentFilters);
+        }
+
+        /**
+         * Returns the fully qualified class name of this component.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the value of the attribute {@code android:<name>}, e.g. "exported" or "authorities",
+         * and {@code null} if it is not set.
+         */
+        public String getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        public List<IntentFilter> getIntentFilters() {
+            return intentFilters;
+        }
+
+        public boolean hasAction(String action) {
+            for (IntentFilter intentFilter : intentFilters) {
+                if (intentFilter.getActions().contains(action)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class IntentFilter {
+        private final List<String> actions;
+        private final List<String> categories;
+
+        private IntentFilter(List<String> actions, List<String> categories) {
+            this.actions = Collections.unmodifiableList(actions);
+            this.categories = Collections.unmodifiableList(categories);
+        }
+
+        public List<String> getActions() {
+            return actions;
+        }
+
+        public List<String> getCategories() {
+            return categories;
+        }
+
+        @Override
+        public String toString() {
+            return "actions=" + actions + ", categories=" + categories;
+        }
+    }
+
+    /**
+     * Method: fromApk
+     * Description: Build the model from the binary manifest of an APK.
+     * @param apk the APK file
+     * @return the manifest model
+     * @throws IOException if the APK or its manifest cannot be read
+     */
+    public static ManifestModel fromApk(File apk) throws IOException {
+        return parse(AxmlParser.fromApk(apk));
+    }
+
+    public static ManifestModel parse(final AxmlParser parser) throws IOException {
+        Builder builder = new Builder();
+        Attributes attributes = new Attributes() {
+            @Override
+            public int size() {
+                return parser.getAttributeCount();
+            }
+
+            @Override
+            public String namespace(int i) {
+                return parser.getAttributeNamespace(i);
+            }
+
+            @Override
+            public String name(int i) {
+                String name = parser.getAttributeName(i);
+                if ((name == null || name.isEmpty()) && parser.getAttributeResourceId(i) == ANDROID_NAME_ID) {
+                    return "name";  // stripped by an obfuscator
+                }
+                return name;
+            }
+
+            @Override
+            public String value(int i) {
+                return parser.getAttributeValue(i);
+            }
+        };
+
+        for (int event = parser.next(); event != AxmlParser.END_DOCUMENT; event = parser.next()) {
+            if (event == AxmlParser.START_TAG) {
+                builder.startTag(parser.getDepth(), parser.getName(), attributes);
+            } else if (event == AxmlParser.END_TAG) {
+                builder.endTag(parser.getDepth());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method: fromXml
+     * Description: Build the model from a text manifest with StAX.
+     * @param manifest the AndroidManifest.xml file
+     * @return the manifest model
+     * @throws IOException if the manifest cannot be read or parsed
+     */
+    public static ManifestModel fromXml(File manifest) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(manifest), 1 << 16)) {
+            final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            Attributes attributes = new Attributes() {
+                @Override
+                public int size() {
+                    return reader.getAttributeCount();
+                }
+
+                @Override
+                public String namespace(int i) {
+                    String namespace = reader.getAttributeNamespace(i);
+                    return namespace == null || namespace.isEmpty() ? null : namespace;
+                }
+
+                @Override
+                public String name(int i) {
+                    return reader.getAttributeLocalName(i);
+                }
+
+                @Override
+                public String value(int i) {
+                    return reader.getAttributeValue(i);
+                }
+            };
+            try {
+                Builder builder = new Builder();
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        builder.startTag(depth, reader.getLocalName(), attributes);
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        builder.endTag(depth);
+                        depth--;
+                    }
+                }
+                return builder.build();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("cannot parse " + manifest + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The attributes of the current start tag of either parser, read only when the builder needs them.
+     */
+    private interface Attributes {
+        int size();
+
+        String namespace(int i);    // null if none
+
+        String name(int i);
+
+        String value(int i);
+    }
+
+    /**
+     * Collects the components from the start and end tags of the manifest.
+     */
+    private static class Builder {
+        private static final String ANDROID = AxmlParser.ANDROID_NAMESPACE;
+
+        private String packageName = null;
+        private final List<Component> activities = new ArrayList<>();
+        private final List<Component> services = new ArrayList<>();
+        private final List<Component> receivers = new ArrayList<>();
+        private final List<Component> providers = new ArrayList<>();
+
+        // The component and intent filter being built
+        private List<Component> componentList = null;
+        private String componentName = null;
+        private Map<String, String> componentAttributes = null;
+        private List<IntentFilter> intentFilters = null;
+        private List<String> actions = null;
+        private List<String> categories = null;
+
+        void startTag(int depth, String tag, Attributes attributes) {
+            if (depth == 1 && tag.equals("manifest")) {
+                packageName = valueOf(attributes, null, "package");
+            } else if (depth == 3) {
+                componentList = listOf(tag);
+                if (componentList != null) {
+                    componentAttributes = new LinkedHashMap<>();
+                    for (int i = 0; i < attributes.size(); i++) {
+                        if (ANDROID.equals(attributes.namespace(i))) {
+                            componentAttributes.put(attributes.name(i), attributes.value(i));
+                        }
+                    }
+                    componentName = qualify(componentAttributes.get("name"));
+                    intentFilters = new ArrayList<>();
+                }
+            } else if (depth == 4 && componentList != null && tag.equals("intent-filter")) {
+                actions = new ArrayList<>();
+                categories = new ArrayList<>();
+            } else if (depth == 5 && actions != null) {
+                String name = valueOf(attributes, ANDROID, "name");
+                if (name != null && tag.equals("action")) {
+                    actions.add(name);
+                } else if (name != null && tag.equals("category")) {
+                    categories.add(name);
+                }
+            }
+        }
+
+        private static String valueOf(Attributes attributes, String namespace, String name) {
+            for (int i = 0; i < attributes.size(); i++) {
+                if (name.equals(attributes.name(i))
+                        && (namespace == null ? attributes.namespace(i) == null : namespace.equals(attributes.namespace(i)))) {
+                    return attributes.value(i);
+                }
+            }
+            return null;
+        }
+
+        void endTag(int depth) {
+            if (depth == 4 && actions != null) {
+                intentFilters.add(new IntentFilter(actions, categories));
+                actions = null;
+                categories = null;
+            } else if (depth == 3 && componentList != null) {
+                if (componentName != null) {
+                    componentList.add(new Component(componentName, componentAttributes, intentFilters));
+                }
+                componentList = null;
+                componentName = null;
+                componentAttributes = null;
+                intentFilters = null;
+            }
+        }
+
+        private List<Component> listOf(String tag) {
+            switch (tag) {
+                case "activity":
+                    return activities;
+                case "service":
+                    return services;
+                case "receiver":
+                    return receivers;
+                case "provider":
+                    return providers;
+                default:
+                    return null;
+            }
+        }
+
+        ManifestModel build() throws IOException {
+            if (packageName == null) {
+                throw new IOException("no package in the manifest");
+            }
+            return new ManifestModel(packageName, activities, services, receivers, providers);
+        }
+
+        // Resolve a component name relative to the package, which the root element has set already
+        private String qualify(String name) {
+            if (name == null || packageName == null) {
+                return name;
+            }
+            if (name.startsWith(".")) {
+                return packageName + name;
+            }
+            return name.indexOf('.') < 0 ? packageName + "." + name : name;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package fu.hao.acteve.instrumentor;
+
+import org.jf.dexlib2.DexFileFactory;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
+import org.jf.dexlib2.iface.ExceptionHandler;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.MultiDexContainer;
+import org.jf.dexlib2.iface.TryBlock;
+import org.jf.dexlib2.iface.instruction.DualReferenceInstruction;
+import org.jf.dexlib2.iface.instruction.FiveRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.OffsetInstruction;
+import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.instruction.RegisterRangeInstruction;
+import org.jf.dexlib2.iface.instruction.SwitchElement;
+import org.jf.dexlib2.iface.instruction.SwitchPayload;
+import org.jf.dexlib2.iface.instruction.ThreeRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.VariableRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.WideLiteralInstruction;
+import org.jf.dexlib2.iface.instruction.formats.ArrayPayload;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.util.ReferenceUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Description: A hash of the bytecode of every method of an APK, and of the declaration of every class,
+ * read from its dex files with dexlib2 without loading anything into Soot.
+ * <p>
+ * A method hash covers its instructions and try blocks, with constant pool indices replaced by the
+ * strings, types, fields and methods they refer to, so that a method keeps its hash when unrelated code
+ * changes the pools. A class hash covers its access flags, superclass, interfaces and the signatures and
+ * access flags of its methods, i.e. everything the class hierarchy analysis of the call graph reads
+ * besides the bodies. Methods are keyed by their Soot signature.
+ */
+public class MethodHashes {
+    private final Map<String, Long> methods;    // method signature -> hash of its body, 0 without one
+    private final Map<String, Long> classes;    // class name -> hash of its declaration
+
+    private MethodHashes(Map<String, Long> methods, Map<String, Long> classes) {
+        this.methods = methods;
+        this.classes = classes;
+    }
+
+    // A class of a dex file, with its Java name
+    interface ClassVisitor {
+        void visit(String className, ClassDef classDef) throws IOException;
+    }
+
+    /**
+     * Method: forEachClass
+     * Description: Visit the classes of all dex files of an APK. A class defined by more than one dex file
+     * counts as defined by the first one, as on the device, so each class is visited once.
+     * @param apk the APK file
+     * @param visitor what to do with each class
+     * @throws IOException if the APK or its dex files cannot be read
+     */
+    static void forEachClass(File apk, ClassVisitor visitor) throws IOException {
+        Set<String> classes = new HashSet<>();
+        MultiDexContainer<? extends DexFile> container = DexFileFactory.loadDexContainer(apk, null);
+        for (String entry : container.getDexEntryNames()) {
+            for (ClassDef classDef : container.getEntry(entry).getClasses()) {
+                String className = javaTypeOf(classDef.getType());
+                if (classes.add(className)) {
+                    visitor.visit(className, classDef);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method: of
+     * Description: Hash the methods and classes of all dex files of an APK.
+     * @param apk the APK file
+     * @return the hashes
+     * @throws IOException if the APK or its dex files cannot be read
+     */
+    public static MethodHashes of(File apk) throws IOException {
+        Map<String, Long> methods = new HashMap<>();
+        Map<String, Long> classes = new HashMap<>();
+        Hasher hasher = new Hasher();
+
+        forEachClass(apk, (className, classDef) -> {
+            List<String> declarations = new ArrayList<>();
+            for (Method method : classDef.getMethods()) {
+                String signature = signatureOf(className, method);
+                methods.put(signature, hasher.hashOf(method.getImplementation()));
+                declarations.add(signature + ' ' + method.getAccessFlags());
+            }
+            Collections.sort(declarations);
+            classes.put(className, hasher.hashOf(classDef, declarations));
+        });
+        return new MethodHashes(methods, classes);
+    }
+
+    public int methodCount() {
+        return methods.size();
+    }
+
+    /**
+     * Method: changedMethods
+     * Description: Find the methods whose bodies differ from [previous]. Only defined if both declare the
+     * same classes with the same declarations, i.e. when no method was added, removed or re-declared and
+     * the class hierarchy is unchanged.
+     * @param previous the hashes of the previous version of the APK
+     * @return the signatures of the changed methods, or null if the declarations differ
+     */
+    public Set<String> changedMethods(MethodHashes previous) {
+        if (!classes.equals(previous.classes)) {
+            return null;
+        }
+
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Long> method : methods.entrySet()) {
+            Long hash = previous.methods.get(method.getKey());
+            if (hash == null) {
+                return null;
+            }
+            if (!hash.equals(method.getValue())) {
+                changed.add(method.getKey());
+            }
+        }
+        return changed;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        writeMap(out, classes);
+        writeMap(out, methods);
+    }
+
+    public static MethodHashes read(DataInputStream in) throws IOException {
+        Map<String, Long> classes = readMap(in);
+        Map<String, Long> methods = readMap(in);
+        return new MethodHashes(methods, classes);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, Long> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, Long> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static Map<String, Long> readMap(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Map<String, Long> map = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            map.put(in.readUTF(), in.readLong());
+        }
+        return map;
+    }
+
+    // The Soot signature of a dex method, e.g. "<a.B: void f(int,java.lang.String[])>"
+    static String signatureOf(String className, MethodReference method) {
+        return '<' + className + ": " + subSignatureOf(method) + '>';
+    }
+
+    // The Soot sub-signature of a dex method, e.g. "void f(int,java.lang.String[])"
+    static String subSignatureOf(MethodReference method) {
+        StringBuilder subSignature = new StringBuilder().append(javaTypeOf(method.getReturnType())).append(' ')
+                .append(method.getName()).append('(');
+        List<? extends CharSequence> parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                subSignature.append(',');
+            }
+            subSignature.append(javaTypeOf(parameterTypes.get(i).toString()));
+        }
+        return subSignature.append(')').toString();
+    }
+
+    // "I" -> "int", "[Ljava/lang/String;" -> "java.lang.String[]"
+    static String javaTypeOf(String descriptor) {
+        int dimensions = 0;
+        while (descriptor.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        String type;
+        switch (descriptor.charAt(dimensions)) {
+            case 'V': type = "void"; break;
+            case 'Z': type = "boolean"; break;
+            case 'B': type = "byte"; break;
+            case 'S': type = "short"; break;
+            case 'C': type = "char"; break;
+            case 'I': type = "int"; break;
+            case 'J': type = "long"; break;
+            case 'F': type = "float"; break;
+            case 'D': type = "double"; break;
+            default:
+                type = descriptor.substring(dimensions + 1, descriptor.length() - 1).replace('/', '.');
+        }
+        StringBuilder javaType = new StringBuilder(type);
+        for (int i = 0; i < dimensions; i++) {
+            javaType.append("[]");
+        }
+        return javaType.toString();
+    }
+
+    /**
+     * Serializes what is hashed into one reused buffer and hashes it with SHA-256, of which the first
+     * 8 bytes are kept.
+     */
+    private static class Hasher {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 12);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final MessageDigest digest;
+
+        Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        long hashOf(MethodImplementation implementation) throws IOException {
+            if (implementation == null) {
+                return 0;
+            }
+            bytes.reset();
+            out.writeShort(implementation.getRegisterCount());
+            for (Instruction instruction : implementation.getInstructions()) {
+                write(instruction);
+            }
+            for (TryBlock<? extends ExceptionHandler> tryBlock : implementation.getTryBlocks()) {
+                out.writeInt(tryBlock.getStartCodeAddress());
+                out.writeInt(tryBlock.getCodeUnitCount());
+                for (ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+                    out.writeUTF(String.valueOf(handler.getExceptionType()));
+                    out.writeInt(handler.getHandlerCodeAddress());
+                }
+            }
+            return digest();
+        }
+
+        long hashOf(ClassDef classDef, List<String> declarations) throws IOException {
+            bytes.reset();
+            out.writeInt(classDef.getAccessFlags());
+            out.writeUTF(String.valueOf(classDef.getSuperclass()));
+            for (String anInterface : classDef.getInterfaces()) {
+                out.writeUTF(anInterface);
+            }
+            out.writeByte(0);
+            for (String declaration : declarations) {
+                out.writeUTF(declaration);
+            }
+            return digest();
+        }
+
+        private void write(Instruction instruction) throws IOException {
+            out.writeUTF(instruction.getOpcode().name);
+            if (instruction instanceof OneRegisterInstruction) {
+                out.writeShort(((OneRegisterInstruction) instruction).getRegisterA());
+            }
+            if (instruction instanceof TwoRegisterInstruction) {
+                out.writeShort(((TwoRegisterInstruction) instruction).getRegisterB());
+            }
+            if (instruction instanceof ThreeRegisterInstruction) {
+                out.writeShort(((ThreeRegisterInstruction) instruction).getRegisterC());
+            }
+            if (instruction instanceof VariableRegisterInstruction) {
+                out.writeShort(((VariableRegisterInstruction) instruction).getRegisterCount());
+            }
+            if (instruction instanceof FiveRegisterInstruction) {
+                FiveRegisterInstruction registers = (FiveRegisterInstruction) instruction;
+                out.writeByte(registers.getRegisterC());
+                out.writeByte(registers.getRegisterD());
+                out.writeByte(registers.getRegisterE());
+                out.writeByte(registers.getRegisterF());
+                out.writeByte(registers.getRegisterG());
+            }
+            if (instruction instanceof RegisterRangeInstruction) {
+                out.writeShort(((RegisterRangeInstruction) instruction).getStartRegister());
+            }
+            if (instruction instanceof WideLiteralInstruction) {
+                out.writeLong(((WideLiteralInstruction) instruction).getWideLiteral());
+            }
+            if (instruction instanceof OffsetInstruction) {
+                out.writeInt(((OffsetInstruction) instruction).getCodeOffset());
+            }
+            if (instruction instanceof ReferenceInstruction) {
+                out.writeUTF(ReferenceUtil.getReferenceString(((ReferenceInstruction) instruction).getReference()));
+            }
+            if (instruction instanceof DualReferenceInstruction) {
+                out.writeUTF(ReferenceUtil.getReferenceString(((DualReferenceInstruction) instruction).getReference2()));
+            }
+            if (instruction instanceof SwitchPayload) {
+                for (SwitchElement element : ((SwitchPayload) instruction).getSwitchElements()) {
+                    out.writeInt(element.getKey());
+                    out.writeInt(element.getOffset());
+                }
+            }
+            if (instruction instanceof ArrayPayload) {
+                out.writeByte(((ArrayPayload) instruction).getElementWidth());
+                for (Number element : ((ArrayPayload) instruction).getArrayElements()) {
+                    out.writeLong(element.longValue());
+                }
+            }
+        }
+
+        private long digest() {
+            byte[] hash = digest.digest(bytes.toByteArray());
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (hash[i] & 0xff);
+            }
+            // 0 stands for no body
+            return h != 0 ? h : 1;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package fu.hao.acteve.instrumentor;
 
 import fu.hao.utils.Log;
+import fu.hao.utils.Settings;
 import polyglot.ast.Call;
 import soot.MethodOrMethodContext;
 import soot.Scene;
@@ -21,7 +22,7 @@ import java.util.*;
 public class MethodUtils {
     private static final String TAG = MethodUtils.class.getSimpleName();
 
-    // The definition of target methods.
+    // The definition of target methods, used unless Settings.getTargetMethods() provides some.
     private static Set<String> TARGET_DEF = new HashSet<>();
 
     static {
@@ -31,17 +32,66 @@ public class MethodUtils {
     }
 
 
+    // The compact snapshot of Scene.v().getCallGraph() and the call graph it was built from
+    private static CompactCallGraph compactCallGraph = null;
+    private static CallGraph compactedCallGraph = null;
+    private static boolean compactCallGraphPinned = false;
+
+    public static CompactCallGraph getCompactCallGraph() {
+        /**
+         * Method: getCompactCallGraph
+         * Description: Get the compact snapshot of the current call graph, rebuilt only when the Scene's
+         * call graph has been replaced or has changed in size since the last snapshot.
+         * @param []
+         * @throw
+         * @return fu.hao.acteve.instrumentor.CompactCallGraph
+         */
+        if (compactCallGraphPinned) {
+            return compactCallGraph;
+        }
+
+        CallGraph callGraph = Scene.v().getCallGraph();
+        if (compactCallGraph == null || compactedCallGraph != callGraph
+                || compactCallGraph.edgeCount() != callGraph.size()) {
+            compactCallGraph = CompactCallGraph.of(callGraph);
+            compactedCallGraph = callGraph;
+        }
+
+        return compactCallGraph;
+    }
+
+    public static void useCompactCallGraph(CompactCallGraph callGraph) {
+        /**
+         * Method: useCompactCallGraph
+         * Description: Serve the call graph queries from [callGraph], e.g. a snapshot loaded from disk,
+         * instead of the Scene's call graph, until the next invalidateCompactCallGraph()
+         * @param [callGraph]
+         * @throw
+         * @return void
+         */
+        compactCallGraph = callGraph;
+        compactedCallGraph = null;
+        compactCallGraphPinned = true;
+    }
+
+    public static void invalidateCompactCallGraph() {
+        compactCallGraph = null;
+        compactedCallGraph = null;
+        compactCallGraphPinned = false;
+    }
+
     public static Set<SootMethod> getCalleesOf(SootMethod method) {
         Set<SootMethod> results = new HashSet<>();
 
-        CallGraph callGraph = Scene.v().getCallGraph();
-        Iterator<Edge> edgeIterator = callGraph.edgesOutOf(method);
+        CompactCallGraph callGraph = getCompactCallGraph();
+        int v = callGraph.idOf(method);
+        if (v < 0) {
+            return results;
+        }
 
-        while (edgeIterator.hasNext()) {
-            Edge edge = edgeIterator.next();
-            if (edge.isExplicit()) {
-                SootMethod targetMethod = edge.getTgt().method();
-                results.add(targetMethod);
+        for (int e = callGraph.outBegin(v); e < callGraph.outEnd(v); e++) {
+            if (callGraph.isExplicit(e)) {
+                results.add(callGraph.methodOf(callGraph.target(e)));
             }
         }
 
@@ -58,51 +108,64 @@ public class MethodUtils {
          * @author Hao Fu(haofu@ucdavis.edu)
          * @since 2016/10/5 18:03
          */
-        Set<SootMethod> callees = new HashSet<>();
-
-        CallGraph callGraph = Scene.v().getCallGraph();
-        Chain<SootMethod> unprocessed = new HashChain<>();
-
-        // Bfs the callgraph
-        unprocessed.add(sootMethod);
-        while (!unprocessed.isEmpty()) {
-            sootMethod = unprocessed.getFirst();
-            unprocessed.removeFirst();
-
-            Iterator<Edge> edges = callGraph.edgesOutOf(sootMethod);
-            while (edges.hasNext()) {
-                Edge edge = edges.next();
-                if (edge.isExplicit()) {
-                    SootMethod tgt = edge.getTgt().method();
-                    if (!callees.contains(tgt)) {
-                        callees.add(tgt);
-                        unprocessed.add(tgt);
-                    }
-                }
-            }
-        }
-
-        return callees;
+        return findTransitiveCalleesOf(Collections.singleton(sootMethod));
     }
 
     public static Set<SootMethod> findTransitiveCalleesOf(Collection<SootMethod> sootMethods) {
         /**
          * Method: findTransitiveCalleesOf
-         * Description: Get all reachable callees (including grandsons) of sootMethods
+         * Description: Get all reachable callees (including grandsons) of sootMethods with a single BFS
          * @param [sootMethods]
          * @throw
          * @return java.util.Set<soot.SootMethod>
          * @author Hao Fu(haofu@ucdavis.edu)
          * @since 2016/10/5 18:19
          */
-        Set<SootMethod> callees = new HashSet<>();
+        CompactCallGraph callGraph = getCompactCallGraph();
+        return toMethods(callGraph, transitiveCallees(callGraph, sootMethods));
+    }
+
+    private static BitSet transitiveCallees(CompactCallGraph callGraph, Collection<SootMethod> sootMethods) {
+        BitSet callees = new BitSet(callGraph.size());
+        BitSet enqueued = new BitSet(callGraph.size());
+        int[] queue = new int[callGraph.size()];
+        int head = 0, tail = 0;
+
         for (SootMethod sootMethod : sootMethods) {
-            callees.addAll(findTransitiveCalleesOf(sootMethod));
+            int v = callGraph.idOf(sootMethod);
+            if (v >= 0 && !enqueued.get(v)) {
+                enqueued.set(v);
+                queue[tail++] = v;
+            }
+        }
+
+        // Bfs the callgraph
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = callGraph.outBegin(v); e < callGraph.outEnd(v); e++) {
+                if (callGraph.isExplicit(e)) {
+                    int w = callGraph.target(e);
+                    callees.set(w);
+                    if (!enqueued.get(w)) {
+                        enqueued.set(w);
+                        queue[tail++] = w;
+                    }
+                }
+            }
         }
 
         return callees;
     }
 
+    private static Set<SootMethod> toMethods(CompactCallGraph callGraph, BitSet ids) {
+        Set<SootMethod> methods = new HashSet<>();
+        for (int v = ids.nextSetBit(0); v >= 0; v = ids.nextSetBit(v + 1)) {
+            methods.add(callGraph.methodOf(v));
+        }
+
+        return methods;
+    }
+
     public static boolean isOrSubClass(String className, String superClassName) {
         SootClass klass = Scene.v().getSootClass(className);
         SootClass superKlass = Scene.v().getSootClass(superClassName);
@@ -111,43 +174,61 @@ public class MethodUtils {
     }
 
     public static boolean isOrSubClass(SootClass klass, SootClass superKlass) {
-        if (klass.equals(superKlass)) {
-            return true;
-        }
-
-        while (klass.hasSuperclass()) {
-            if (klass.getSuperclass().equals(superKlass)) {
-                return true;
-            }
-            klass = klass.getSuperclass();
-        }
-
-        return false;
+        /**
+         * Method: isOrSubClass
+         * Description: Whether klass is superKlass, or extends or implements it, directly or not
+         * @param [klass, superKlass]
+         * @throw
+         * @return boolean
+         */
+        return TypeHierarchy.v().isSubtype(klass, superKlass);
     }
 
     public static boolean isTarget(SootMethod sootMethod) {
         /**
          * Method: isTarget
-         * Description: Whether the given method is in the TARGET_DEF
+         * Description: Whether the given method is one of the target definitions
          * @param [sootMethod]
          * @throw
          * @return boolean
          * @author Hao Fu(haofu@ucdavis.edu)
          * @since 2016/10/5 19:15
          */
-        SootClass declaringClass = sootMethod.getDeclaringClass();
-        for (String def : TARGET_DEF) {
-            if (Scene.v().containsMethod(def)) {
-                SootMethod defMethod = Scene.v().getMethod(def);
-                if (isOrSubClass(declaringClass, defMethod.getDeclaringClass())) {
-                    if (defMethod.getSubSignature().equals(sootMethod.getSubSignature())) {
-                        return true;
-                    }
-                }
-            }
+        return getTargetIndex().matches(sootMethod);
+    }
+
+    // The target definitions resolved against the Scene
+    private static TargetIndex targetIndex = null;
+
+    public static TargetIndex getTargetIndex() {
+        /**
+         * Method: getTargetIndex
+         * Description: Get the index of the target definitions, building it if it has not been built for the current Scene yet
+         * @param []
+         * @throw
+         * @return fu.hao.acteve.instrumentor.TargetIndex
+         */
+        if (targetIndex == null || !targetIndex.isCurrent()) {
+            buildTargetIndex();
         }
 
-        return false;
+        return targetIndex;
+    }
+
+    public static void buildTargetIndex() {
+        /**
+         * Method: buildTargetIndex
+         * Description: Resolve the target definitions against the Scene, to be called once the classes are loaded
+         * @param []
+         * @throw
+         * @return void
+         */
+        targetIndex = TargetIndex.build(getTargetDefs());
+    }
+
+    public static Set<String> getTargetDefs() {
+        Set<String> targetMethods = Settings.getTargetMethods();
+        return targetMethods.isEmpty() ? TARGET_DEF : targetMethods;
     }
 
     public static Set<SootMethod> findReachableTargets(Collection<SootMethod> startingPoints) {
@@ -160,8 +241,12 @@ public class MethodUtils {
          * @author Hao Fu(haofu@ucdavis.edu)
          * @since 2016/10/5 20:00
          */
+        CompactCallGraph callGraph = getCompactCallGraph();
+        BitSet callees = transitiveCallees(callGraph, startingPoints);
+
         Set<SootMethod> targets = new HashSet<>();
-        for (SootMethod sootMethod : findTransitiveCalleesOf(startingPoints)) {
+        for (int v = callees.nextSetBit(0); v >= 0; v = callees.nextSetBit(v + 1)) {
+            SootMethod sootMethod = callGraph.methodOf(v);
             if (isTarget(sootMethod)) {
                 targets.add(sootMethod);
             }
@@ -170,80 +255,70 @@ public class MethodUtils {
         return targets;
     }
 
-    public static CallGraph findTransitiveCallersOf(SootMethod sootMethod) {
+    public static CompactCallGraph findTransitiveCallersOf(SootMethod sootMethod) {
         /**
          * Method: findTransitiveCallersOf
-         * Description: BFS to get all transitive reachable callers
+         * Description: BFS to get all transitive reachable callers, ignoring calls from the dummy main
          * @param [sootMethod]
          * @throw
-         * @return soot.jimple.toolkits.callgraph.CallGraph
+         * @return fu.hao.acteve.instrumentor.CompactCallGraph
          * @author Hao Fu(haofu@ucdavis.edu)
          * @since 2016/10/5 19:35
          */
-
-        CallGraph callGraph = Scene.v().getCallGraph();
-        CallGraph subGraph = new CallGraph();
-
-        Queue<SootMethod> unprocessed  = new LinkedList<>();
-
-        unprocessed.add(sootMethod);
-
-        while (!unprocessed.isEmpty()) {
-            sootMethod = unprocessed.poll();
-            Iterator<Edge> edges = callGraph.edgesInto(sootMethod);
-
-            while (edges.hasNext()) {
-                Edge edge = edges.next();
-                if (!edge.getSrc().method().getSignature().contains("<dummyMainClass: void dummyMainMethod")) {
-                    SootMethod src = edge.src();
-
-                    if (!unprocessed.contains(src)) {
-                        unprocessed.add(src);
-                    }
-                    subGraph.addEdge(edge);
-                }
-            }
-        }
-
-        return subGraph;
+        return reverseSubGraph(sootMethod, true);
     }
 
-    public static CallGraph findSubCGIn(SootMethod sootMethod) {
+    public static CompactCallGraph findSubCGIn(SootMethod sootMethod) {
         /**
          * Method: findSubCGOf
          * Description: BFS to get the sub graph edges into the given
          * @param [sootMethod]
          * @throw
-         * @return soot.jimple.toolkits.callgraph.CallGraph
+         * @return fu.hao.acteve.instrumentor.CompactCallGraph
          * @author Hao Fu(haofu@ucdavis.edu)
          * @since 2016/10/5 19:35
          */
+        return reverseSubGraph(sootMethod, false);
+    }
 
-        CallGraph callGraph = Scene.v().getCallGraph();
-        CallGraph subGraph = new CallGraph();
-
-        Queue<SootMethod> unprocessed  = new LinkedList<>();
-
-        unprocessed.add(sootMethod);
+    private static CompactCallGraph reverseSubGraph(SootMethod sootMethod, boolean skipDummyMain) {
+        CompactCallGraph callGraph = getCompactCallGraph();
+        BitSet subGraphEdges = new BitSet(callGraph.edgeCount());
 
-        while (!unprocessed.isEmpty()) {
-            sootMethod = unprocessed.poll();
-            Iterator<Edge> edges = callGraph.edgesInto(sootMethod);
+        int start = callGraph.idOf(sootMethod);
+        if (start < 0) {
+            return callGraph.subgraph(subGraphEdges);
+        }
 
-            while (edges.hasNext()) {
-                Edge edge = edges.next();
-                //if (!edge.getSrc().method().getSignature().contains("<dummyMainClass: void dummyMainMethod")) {
-                    SootMethod src = edge.src();
+        // Each method is expanded once, so each edge into it is selected once, even on recursion
+        BitSet visited = new BitSet(callGraph.size());
+        int[] unprocessed = new int[callGraph.size()];
+        int head = 0, tail = 0;
+        visited.set(start);
+        unprocessed[tail++] = start;
+
+        while (head < tail) {
+            int v = unprocessed[head++];
+            for (int i = callGraph.inBegin(v); i < callGraph.inEnd(v); i++) {
+                int e = callGraph.inEdge(i);
+                int src = callGraph.source(e);
+                if (skipDummyMain && isDummyMain(callGraph.methodOf(src))) {
+                    continue;
+                }
 
-                    if (!unprocessed.contains(src)) {
-                        unprocessed.add(src);
-                    }
-                    subGraph.addEdge(edge);
-                //}
+                if (!visited.get(src)) {
+                    visited.set(src);
+                    unprocessed[tail++] = src;
+                }
+                subGraphEdges.set(e);
             }
         }
 
-        return subGraph;
+        return callGraph.subgraph(subGraphEdges);
+    }
+
+    private static boolean isDummyMain(SootMethod sootMethod) {
+        return sootMethod.getSignature().contains("<dummyMainClass: void dummyMainMethod");
     }
 
     public static Set<SootMethod> getEntries(CallGraph callGraph) {
@@ -257,4 +332,18 @@ public class MethodUtils {
         return entries;
     }
 
+    public static Set<SootMethod> getEntries(CompactCallGraph callGraph) {
+        Set<SootMethod> entries = new HashSet<>();
+        for (int v = 0; v < callGraph.size(); v++) {
+            if (callGraph.outBegin(v) < callGraph.outEnd(v)
+                    && callGraph.methodOf(v).getSignature().contains("<dummyMainClass")) {
+                for (int e = callGraph.outBegin(v); e < callGraph.outEnd(v); e++) {
+                    entries.add(callGraph.methodOf(callGraph.target(e)));
+                }
+            }
+        }
+
+        return entries;
+    }
+
 }
@@ -0,0 +1,167 @@
+package fu.hao.acteve.instrumentor;
+
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Description: Multi-target shortest paths over the explicit edges of a {@link CompactCallGraph}.
+ * <p>
+ * A single reverse BFS from all targets at once records, for every method that can reach a
+ * target, its nearest target and the next edge on a shortest path towards it. This replaces
+ * one forward search per (target, entry) pair by one search in time proportional to
+ * <em>V</em> + <em>E</em>. Afterwards, {@code hasPathFrom()} and {@code nearestTargetOf()}
+ * take constant time and {@code pathFrom()} takes time proportional to the length of the path.
+ * Ties between equally near targets go to the target with the smaller method ID.
+ */
+public class NearestTargetSP {
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final CompactCallGraph callGraph;
+    private final int[] distTo;     // distTo[v] = length of a shortest path from v to any target
+    private final int[] edgeTo;     // edgeTo[v] = first edge on that path, -1 for targets and unreachable
+    private final int[] nearest;    // nearest[v] = the target that path ends in, -1 if unreachable
+
+    /**
+     * Computes the shortest paths from every method to its nearest target.
+     *
+     * @param  callGraph the compact call graph
+     * @param  targets the target methods, those not in {@code callGraph} are ignored
+     */
+    public NearestTargetSP(CompactCallGraph callGraph, Collection<SootMethod> targets) {
+        this.callGraph = callGraph;
+        int n = callGraph.size();
+        distTo = new int[n];
+        edgeTo = new int[n];
+        nearest = new int[n];
+        Arrays.fill(distTo, INFINITY);
+        Arrays.fill(edgeTo, -1);
+        Arrays.fill(nearest, -1);
+
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int t : sortedIds(targets)) {
+            if (distTo[t] == INFINITY) {
+                distTo[t] = 0;
+                nearest[t] = t;
+                queue[tail++] = t;
+            }
+        }
+
+        // Bfs the reversed callgraph
+        while (head < tail) {
+            int w = queue[head++];
+            for (int i = callGraph.inBegin(w); i < callGraph.inEnd(w); i++) {
+                int e = callGraph.inEdge(i);
+                if (!callGraph.isExplicit(e)) {
+                    continue;
+                }
+                int v = callGraph.source(e);
+                if (distTo[v] == INFINITY) {
+                    distTo[v] = distTo[w] + 1;
+                    edgeTo[v] = e;
+                    nearest[v] = nearest[w];
+                    queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    private int[] sortedIds(Collection<SootMethod> methods) {
+        int[] ids = new int[methods.size()];
+        int n = 0;
+        for (SootMethod method : methods) {
+            int v = callGraph.idOf(method);
+            if (v >= 0) {
+                ids[n++] = v;
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Returns true if there is a path from {@code v} to any target.
+     */
+    public boolean hasPathFrom(SootMethod v) {
+        int w = callGraph.idOf(v);
+        return w >= 0 && distTo[w] < INFINITY;
+    }
+
+    /**
+     * Returns the number of edges from {@code v} to its nearest target,
+     * {@code Integer.MAX_VALUE} if there is no such target.
+     */
+    public int distFrom(SootMethod v) {
+        int w = callGraph.idOf(v);
+        return w < 0 ? INFINITY : distTo[w];
+    }
+
+    /**
+     * Returns the nearest target of {@code v}, and {@code null} if no target is reachable.
+     */
+    public SootMethod nearestTargetOf(SootMethod v) {
+        int w = callGraph.idOf(v);
+        return w < 0 || nearest[w] < 0 ? null : callGraph.methodOf(nearest[w]);
+    }
+
+    /**
+     * Returns the methods along a shortest path from {@code v} to its nearest target, both included,
+     * and {@code null} if no target is reachable.
+     */
+    public List<SootMethod> pathFrom(SootMethod v) {
+        if (!hasPathFrom(v)) {
+            return null;
+        }
+        int w = callGraph.idOf(v);
+        List<SootMethod> path = new ArrayList<>(distTo[w] + 1);
+        path.add(callGraph.methodOf(w));
+        for (int e = edgeTo[w]; e >= 0; e = edgeTo[w]) {
+            w = callGraph.target(e);
+            path.add(callGraph.methodOf(w));
+        }
+        return path;
+    }
+
+    /**
+     * Returns the number of edges from method ID {@code v} to its nearest target,
+     * {@code Integer.MAX_VALUE} if there is no such target.
+     */
+    int distFrom(int v) {
+        return distTo[v];
+    }
+
+    CompactCallGraph getCallGraph() {
+        return callGraph;
+    }
+
+    /**
+     * Returns those of {@code entries} that reach a target, ordered by method ID
+     * so that reruns on the same call graph report them in the same order.
+     */
+    public List<SootMethod> entriesReachingTargets(Collection<SootMethod> entries) {
+        List<SootMethod> reaching = new ArrayList<>();
+        for (int v : sortedIds(entries)) {
+            if (distTo[v] < INFINITY) {
+                reaching.add(callGraph.methodOf(v));
+            }
+        }
+        return reaching;
+    }
+
+    /**
+     * Returns the shortest paths from each of {@code entries} that reaches a target,
+     * in the order of {@link #entriesReachingTargets(Collection)}.
+     */
+    public List<List<SootMethod>> pathsFrom(Collection<SootMethod> entries) {
+        List<List<SootMethod>> paths = new ArrayList<>();
+        for (SootMethod entry : entriesReachingTargets(entries)) {
+            paths.add(pathFrom(entry));
+        }
+        return paths;
+    }
+}
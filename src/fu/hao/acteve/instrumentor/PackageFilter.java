@@ -0,0 +1,165 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import fu.hao.utils.Settings;
+import fu.hao.utils.Statistics;
+import soot.Body;
+import soot.MethodSource;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.Jimple;
+import soot.jimple.NullConstant;
+import soot.options.Options;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Description: Which packages of an app are library code left out of the call graph: the common third-party
+ * packages bundled into apps, e.g. support libraries, ad and analytics SDKs, plus the excluded packages of
+ * the Settings, unless they are in the included packages of the Settings or in the package of the app.
+ * <p>
+ * The packages are passed to Soot as its exclusion list, which only applies to a Scene created afterwards.
+ * FlowDroid creates the Scene while computing the entry points, so the bodies of the classes it already
+ * loaded are replaced by stubs instead, which have no call edges. The calls from excluded code to the
+ * targets are then modeled by the summary edges of {@link DemandCallGraph#addSummaryEdges}, but the calls
+ * from excluded code back into the app are not, so the paths through them are missing from the results.
+ * The filter is therefore only used when {@code Settings.isPackageFilterEnabled()}, which is off by default.
+ */
+public class PackageFilter {
+    private static final String TAG = PackageFilter.class.getSimpleName();
+
+    public static final List<String> THIRD_PARTY_PACKAGES = Collections.unmodifiableList(Arrays.asList(
+            // Support libraries and language runtimes
+            "android.support.", "androidx.", "kotlin.", "kotlinx.",
+            // Google and Facebook SDKs
+            "com.google.android.gms.", "com.google.firebase.", "com.google.ads.", "com.google.gson.",
+            "com.google.protobuf.", "com.google.common.", "com.facebook.",
+            // Networking, images and frameworks; org.apache.http is part of the framework, so not all of org.apache
+            "com.squareup.", "okhttp3.", "okio.", "retrofit2.", "com.bumptech.glide.",
+            "com.nostra13.universalimageloader.", "org.apache.commons.", "io.reactivex.", "rx.", "bolts.", "butterknife.",
+            "dagger.", "javax.inject.",
+            // Ads and analytics
+            "com.crashlytics.", "io.fabric.", "com.flurry.", "com.mopub.", "com.applovin.", "com.chartboost.",
+            "com.inmobi.", "com.vungle.", "com.unity3d.", "com.startapp.", "com.tapjoy.", "com.adjust.sdk.",
+            "com.appsflyer.", "com.amazon.device.ads.", "com.umeng.", "com.baidu.mobads."));
+
+    // The body of an excluded method: no statement but a throw, so no call edges
+    private static final MethodSource STUB = (method, phaseName) -> {
+        Body body = Jimple.v().newBody(method);
+        body.getUnits().add(Jimple.v().newThrowStmt(NullConstant.v()));
+        return body;
+    };
+
+    private final List<String> excluded;
+    private final List<String> included;
+
+    /**
+     * @param excluded the prefixes of the excluded packages, e.g. "com.facebook"
+     * @param included the prefixes of the packages to keep even though they are in an excluded one
+     */
+    public PackageFilter(Collection<String> excluded, Collection<String> included) {
+        this.excluded = prefixesOf(excluded);
+        this.included = prefixesOf(included);
+    }
+
+    /**
+     * Method: forApp
+     * Description: The filter of the Settings for an app, which never excludes the package of the app.
+     * @param packageName the package of the app
+     * @return the filter
+     */
+    public static PackageFilter forApp(String packageName) {
+        List<String> excluded = new ArrayList<>(THIRD_PARTY_PACKAGES);
+        excluded.addAll(Settings.getExcludedPackages());
+        List<String> included = new ArrayList<>(Settings.getIncludedPackages());
+        if (packageName != null && !packageName.isEmpty()) {
+            included.add(packageName);
+        }
+        return new PackageFilter(excluded, included);
+    }
+
+    /**
+     * Everything of the Settings the filter of an app depends on, for the cache keys.
+     */
+    public static String configuration() {
+        return "excluded=" + THIRD_PARTY_PACKAGES + Settings.getExcludedPackages() + ",included="
+                + Settings.getIncludedPackages();
+    }
+
+    // "com.facebook" -> "com.facebook.", so that it does not match "com.facebookx"
+    private static List<String> prefixesOf(Collection<String> packages) {
+        List<String> prefixes = new ArrayList<>(packages.size());
+        for (String packageName : packages) {
+            prefixes.add(packageName.endsWith(".") ? packageName : packageName + '.');
+        }
+        return prefixes;
+    }
+
+    public boolean isExcluded(String className) {
+        for (String prefix : included) {
+            if (className.startsWith(prefix)) {
+                return false;
+            }
+        }
+        for (String prefix : excluded) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method: setSootOptions
+     * Description: Pass the packages to Soot as its exclusion and inclusion lists, "com.facebook.*" and so on.
+     */
+    public void setSootOptions() {
+        Options.v().set_exclude(patternsOf(excluded));
+        Options.v().set_include(patternsOf(included));
+    }
+
+    private static List<String> patternsOf(List<String> prefixes) {
+        List<String> patterns = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            patterns.add(prefix + '*');
+        }
+        return patterns;
+    }
+
+    /**
+     * Method: stubExcludedBodies
+     * Description: Replace the bodies of the methods of the excluded classes of the Scene by stubs, releasing
+     * the bodies created so far, so that building the call graph neither converts nor traverses them.
+     * @return the number of stubbed methods
+     */
+    public int stubExcludedBodies() {
+        int classes = 0;
+        int methods = 0;
+        for (SootClass klass : Scene.v().getClasses()) {
+            if (klass.isPhantom() || !isExcluded(klass.getName())) {
+                continue;
+            }
+            classes++;
+            if (klass.resolvingLevel() < SootClass.BODIES) {
+                // Excluded by Soot already
+                continue;
+            }
+            for (SootMethod method : klass.getMethods()) {
+                if (method.isConcrete()) {
+                    method.releaseActiveBody();
+                    method.setSource(STUB);
+                    methods++;
+                }
+            }
+        }
+        Statistics.setCount("excludedClasses", classes);
+        Statistics.setCount("excludedMethods", methods);
+        Log.msg(TAG, "Excluded %d classes with %d methods from the call graph", classes, methods);
+        return methods;
+    }
+}
@@ -0,0 +1,160 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import fu.hao.utils.Statistics;
+import soot.SootMethod;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Description: Enumerates the paths from many entry points concurrently on a fork-join pool.
+ * <p>
+ * The call graph and the reverse search of {@link NearestTargetSP} are frozen and only read,
+ * the methods of a loaded call graph being resolved up front, so each task just needs its own
+ * {@link PathEnumerator} as search state. The results are merged in the order of
+ * {@link NearestTargetSP#entriesReachingTargets(Collection)}, so the output does not depend on
+ * the number of threads or on scheduling: the caps of each enumeration, including its step
+ * budget, are counts rather than times. With a {@link ResultSink}, the paths of each entry are
+ * written as soon as they and those of all previous entries are found.
+ */
+public class PathDiscovery {
+    private static final String TAG = PathDiscovery.class.getSimpleName();
+
+    private final NearestTargetSP nearestTargets;
+    private final int threads;
+    private final int maxPathsPerEntry;
+    private final int maxPathLength;
+    private final long maxPathSteps;
+    private boolean truncated = false;
+
+    // Paths and search time of one entry point
+    private static class EntryPaths {
+        final SootMethod entry;
+        final List<List<SootMethod>> paths = new ArrayList<>();
+        boolean truncated;
+        long nanos;
+
+        EntryPaths(SootMethod entry) {
+            this.entry = entry;
+        }
+    }
+
+    public PathDiscovery(NearestTargetSP nearestTargets, int threads, int maxPathsPerEntry,
+                         int maxPathLength, long maxPathSteps) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.nearestTargets = nearestTargets;
+        this.threads = threads;
+        this.maxPathsPerEntry = maxPathsPerEntry;
+        this.maxPathLength = maxPathLength;
+        this.maxPathSteps = maxPathSteps;
+    }
+
+    /**
+     * Method: discover
+     * Description: Enumerate the paths from all entries that reach a target, one task per entry.
+     * @param entries the lifecycle entry points
+     * @param sink where to write the paths as they are found, or null
+     * @return the paths, grouped by entry in method ID order
+     * @throws IOException if the sink cannot be written, or an InterruptedIOException if the thread is interrupted
+     */
+    public List<List<SootMethod>> discover(Collection<SootMethod> entries, ResultSink sink) throws IOException {
+        // The tasks turn IDs into methods, which must not change the Scene concurrently
+        nearestTargets.getCallGraph().resolveMethods();
+        List<Callable<EntryPaths>> tasks = new ArrayList<>();
+        for (final SootMethod entry : nearestTargets.entriesReachingTargets(entries)) {
+            tasks.add(new Callable<EntryPaths>() {
+                @Override
+                public EntryPaths call() {
+                    long start = System.nanoTime();
+                    long allocated = Statistics.allocatedBytes();
+                    EntryPaths result = new EntryPaths(entry);
+                    PathEnumerator pathEnumerator = new PathEnumerator(nearestTargets, entry, maxPathsPerEntry,
+                            maxPathLength, maxPathSteps);
+                    while (pathEnumerator.hasNext()) {
+                        result.paths.add(pathEnumerator.next());
+                    }
+                    result.truncated = pathEnumerator.isTruncated();
+                    result.nanos = System.nanoTime() - start;
+                    if (allocated >= 0) {
+                        Statistics.addAllocatedBytes(Statistics.Phase.PATH_SEARCH, Statistics.allocatedBytes() - allocated);
+                    }
+                    return result;
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        truncated = false;
+        List<List<SootMethod>> paths = new ArrayList<>();
+        long taskNanos = 0;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<EntryPaths>> futures = new ArrayList<>(tasks.size());
+            for (Callable<EntryPaths> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+
+            // Take the results in task order, each as soon as it and all before it are done
+            for (Future<EntryPaths> future : futures) {
+                EntryPaths result;
+                try {
+                    result = future.get();
+                } catch (InterruptedException e) {
+                    // Keep the cancellation for the caller, e.g. a batch run being stopped
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException interrupted = new InterruptedIOException("Path discovery was interrupted");
+                    interrupted.initCause(e);
+                    throw interrupted;
+                } catch (ExecutionException e) {
+                    // The tasks throw no checked exceptions, so the cause is what the failure message should show
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException("Path discovery failed", cause);
+                }
+                if (result.truncated) {
+                    truncated = true;
+                    Log.warn(TAG, "Path enumeration from %s stopped at its caps.", result.entry.getSignature());
+                }
+                paths.addAll(result.paths);
+                if (sink != null) {
+                    for (List<SootMethod> path : result.paths) {
+                        sink.path(AnalysisResult.signaturesOf(path));
+                    }
+                    sink.flush();
+                }
+                taskNanos += result.nanos;
+            }
+        } finally {
+            // Cancels the remaining tasks if writing failed
+            pool.shutdownNow();
+        }
+
+        long wallNanos = Math.max(1, System.nanoTime() - start);
+        // The sum of the task times is what a sequential run would have taken, if the cores are not oversubscribed
+        Log.msg(TAG, "Found %d paths from %d entries on %d threads in %.1f ms, task time / wall time: %.2f",
+                paths.size(), tasks.size(), threads, wallNanos / 1e6, (double) taskNanos / wallNanos);
+        return paths;
+    }
+
+    /**
+     * Returns true if the enumeration of an entry stopped at its caps in the last call to discover.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,175 @@
+package fu.hao.acteve.instrumentor;
+
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Description: Lazily enumerates the simple paths from an entry method to the targets of a
+ * {@link NearestTargetSP}, following explicit edges only and stopping at the first target on a path.
+ * <p>
+ * The enumeration is a depth-first search on an explicit stack, so memory stays proportional
+ * to the maximal path length no matter how many paths exist. Methods that cannot reach any
+ * target are pruned in constant time from the distances of the reverse search, and so are
+ * methods whose nearest target is further away than the remaining length budget. A callee
+ * called from several sites of a method is followed once, so every path is a distinct
+ * sequence of methods.
+ * The enumeration stops after {@code maxPaths} paths or {@code maxSteps} search steps, each
+ * looking at one edge or backtracking once, whichever comes first; {@link #isTruncated()} tells whether it stopped early, i.e. whether
+ * there was a path left. The budget counts steps rather than time, so the paths found do not
+ * depend on the load of the machine.
+ */
+public class PathEnumerator implements Iterator<List<SootMethod>> {
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final CompactCallGraph callGraph;
+    private final NearestTargetSP nearestTargets;
+    private final int maxPaths;
+    private final int maxLength;
+    private final long maxSteps;
+
+    private final int[] stack;      // stack[0..depth] = methods on the current path
+    private final int[] cursor;     // cursor[i] = next out edge of stack[i] to try
+    private final BitSet onPath;
+    private int depth;
+
+    private int found = 0;
+    private long steps = 0;
+    private boolean truncated = false;
+    private boolean exhausted = false;
+    private List<SootMethod> next = null;
+
+    /**
+     * @param  nearestTargets the reverse search from the targets
+     * @param  entry the method all paths start from
+     * @param  maxPaths the maximal number of paths to enumerate
+     * @param  maxLength the maximal number of edges on a path
+     * @param  maxSteps the maximal number of search steps of the whole enumeration, 0 for no limit
+     * @throws IllegalArgumentException if {@code maxPaths} or {@code maxLength} is negative
+     */
+    public PathEnumerator(NearestTargetSP nearestTargets, SootMethod entry,
+                          int maxPaths, int maxLength, long maxSteps) {
+        if (maxPaths < 0 || maxLength < 0) {
+            throw new IllegalArgumentException("maxPaths and maxLength must be nonnegative");
+        }
+        this.callGraph = nearestTargets.getCallGraph();
+        this.nearestTargets = nearestTargets;
+        this.maxPaths = maxPaths;
+        this.maxLength = maxLength;
+        this.maxSteps = maxSteps > 0 ? maxSteps : Long.MAX_VALUE;
+
+        stack = new int[maxLength + 1];
+        cursor = new int[maxLength + 1];
+        onPath = new BitSet(callGraph.size());
+        depth = -1;
+
+        int v = callGraph.idOf(entry);
+        if (v >= 0 && nearestTargets.distFrom(v) <= maxLength) {
+            if (nearestTargets.distFrom(v) == 0) {
+                // The entry is a target itself
+                if (maxPaths > 0) {
+                    next = toPath(v);
+                    found++;
+                } else {
+                    truncated = true;
+                }
+            } else {
+                push(v);
+            }
+        }
+    }
+
+    private void push(int v) {
+        depth++;
+        stack[depth] = v;
+        cursor[depth] = callGraph.outBegin(v);
+        onPath.set(v);
+    }
+
+    private List<SootMethod> toPath(int target) {
+        List<SootMethod> path = new ArrayList<>(depth + 2);
+        for (int i = 0; i <= depth; i++) {
+            path.add(callGraph.methodOf(stack[i]));
+        }
+        path.add(callGraph.methodOf(target));
+        return path;
+    }
+
+    // Advance the search to the next path, null if there is none
+    private List<SootMethod> advance() {
+        while (depth >= 0 && !exhausted) {
+            if (++steps > maxSteps) {
+                truncated = true;
+                exhausted = true;
+                return null;
+            }
+
+            int v = stack[depth];
+            if (cursor[depth] == callGraph.outEnd(v)) {
+                onPath.clear(v);
+                depth--;
+                continue;
+            }
+
+            int e = cursor[depth]++;
+            if (!callGraph.isExplicit(e) || callGraph.isParallel(e)) {
+                continue;
+            }
+            int w = callGraph.target(e);
+            int dist = nearestTargets.distFrom(w);
+            // Dead end, too far from any target or a cycle
+            if (dist == INFINITY || depth + 1 + dist > maxLength || onPath.get(w)) {
+                continue;
+            }
+
+            if (dist == 0) {
+                if (found >= maxPaths) {
+                    // Looked ahead for one more path than the cap
+                    truncated = true;
+                    exhausted = true;
+                    return null;
+                }
+                found++;
+                return toPath(w);
+            }
+            push(w);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public List<SootMethod> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<SootMethod> path = next;
+        next = null;
+        return path;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns true if the enumeration stopped on the path count or step cap
+     * before all paths within the length cap were found.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
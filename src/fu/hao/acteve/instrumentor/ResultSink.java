@@ -0,0 +1,270 @@
+package fu.hao.acteve.instrumentor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Writes the entry points, targets and paths of an analysis as a stream of records, so that
+ * downstream tools read them as they are found instead of parsing the log.
+ * <p>
+ * Methods are referred to by IDs. The first record that uses a method is preceded by a {@code method}
+ * record defining its ID, so the dictionary is complete at any point of the stream. In order, a stream
+ * has an {@code app} record, the {@code entry} and {@code target} records, the {@code path} records as
+ * they are found and an {@code end} record with the counts, written by {@link #end()} once the analysis
+ * succeeded; a stream without it was cut short, e.g. by a failure of the analysis.
+ * <p>
+ * In JSONL, every record is one line:
+ * <pre>
+ *     {"type":"app","apk":"a.apk"}
+ *     {"type":"method","id":0,"signature":"&lt;a.B: void onCreate(android.os.Bundle)&gt;"}
+ *     {"type":"entry","method":0}
+ *     {"type":"target","method":1}
+ *     {"type":"path","methods":[0,2,1]}
+ *     {"type":"end","entries":1,"targets":1,"paths":1}
+ * </pre>
+ * The binary format starts with the magic {@code "ARS1"}. Every record follows as a big-endian int with
+ * the length of the rest of the record, the record type as one byte and its fields: strings as int
+ * length and UTF-8, IDs and counts as ints, and a path as its length and its method IDs.
+ */
+public class ResultSink implements Closeable {
+    public enum Format {
+        JSONL,
+        BINARY
+    }
+
+    static final byte[] MAGIC = {'A', 'R', 'S', '1'};
+
+    static final byte APP = 1;
+    static final byte METHOD = 2;
+    static final byte ENTRY = 3;
+    static final byte TARGET = 4;
+    static final byte PATH = 5;
+    static final byte END = 6;
+
+    private final Format format;
+    private final DataOutputStream out;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int entries = 0;
+    private int targets = 0;
+    private int paths = 0;
+
+    // The binary record being built, written out after its length
+    private final Record record = new Record();
+    private final DataOutputStream fields = new DataOutputStream(record);
+
+    private static class Record extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    public ResultSink(OutputStream out, Format format) throws IOException {
+        this.format = format;
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        if (format == Format.BINARY) {
+            this.out.write(MAGIC);
+        }
+    }
+
+    /**
+     * Method: open
+     * Description: Open a sink writing to [file], whose format is BINARY for the extension ".bin" and JSONL otherwise.
+     * @param file the result file, overwritten if it exists
+     * @return the sink
+     */
+    public static ResultSink open(File file) throws IOException {
+        Format format = file.getName().endsWith(".bin") ? Format.BINARY : Format.JSONL;
+        return new ResultSink(new FileOutputStream(file), format);
+    }
+
+    public void app(String apk) throws IOException {
+        if (format == Format.JSONL) {
+            line("{\"type\":\"app\",\"apk\":" + quote(apk) + "}");
+        } else {
+            fields.writeByte(APP);
+            writeString(apk);
+            endRecord();
+        }
+    }
+
+    public void entry(String signature) throws IOException {
+        methodRecord(ENTRY, "entry", idOf(signature));
+        entries++;
+    }
+
+    public void target(String signature) throws IOException {
+        methodRecord(TARGET, "target", idOf(signature));
+        targets++;
+    }
+
+    public void entries(Collection<String> signatures) throws IOException {
+        for (String signature : signatures) {
+            entry(signature);
+        }
+    }
+
+    public void targets(Collection<String> signatures) throws IOException {
+        for (String signature : signatures) {
+            target(signature);
+        }
+    }
+
+    /**
+     * Writes a path, given by the signatures of its methods from the entry to the target.
+     */
+    public void path(List<String> signatures) throws IOException {
+        int[] path = new int[signatures.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = idOf(signatures.get(i));
+        }
+
+        if (format == Format.JSONL) {
+            StringBuilder line = new StringBuilder("{\"type\":\"path\",\"methods\":[");
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(path[i]);
+            }
+            line(line.append("]}").toString());
+        } else {
+            fields.writeByte(PATH);
+            fields.writeInt(path.length);
+            for (int id : path) {
+                fields.writeInt(id);
+            }
+            endRecord();
+        }
+        paths++;
+    }
+
+    /**
+     * Writes all of an already computed result, e.g. one from the analysis cache.
+     */
+    public void result(AnalysisResult result) throws IOException {
+        entries(result.getEntryPoints());
+        targets(result.getTargets());
+        for (List<String> path : result.getPaths()) {
+            path(path);
+        }
+    }
+
+    /**
+     * Pushes the records written so far to the file, for readers following the stream.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes the end record, which marks the stream as complete, and pushes it to the file.
+     */
+    public void end() throws IOException {
+        if (format == Format.JSONL) {
+            line("{\"type\":\"end\",\"entries\":" + entries + ",\"targets\":" + targets + ",\"paths\":" + paths + "}");
+        } else {
+            fields.writeByte(END);
+            fields.writeInt(entries);
+            fields.writeInt(targets);
+            fields.writeInt(paths);
+            endRecord();
+        }
+        out.flush();
+    }
+
+    /**
+     * Closes the file, without an end record unless {@link #end()} was called.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // The ID of a method, defining it first if it is new
+    private int idOf(String signature) throws IOException {
+        Integer id = ids.get(signature);
+        if (id != null) {
+            return id;
+        }
+        id = ids.size();
+        ids.put(signature, id);
+        if (format == Format.JSONL) {
+            line("{\"type\":\"method\",\"id\":" + id + ",\"signature\":" + quote(signature) + "}");
+        } else {
+            fields.writeByte(METHOD);
+            fields.writeInt(id);
+            writeString(signature);
+            endRecord();
+        }
+        return id;
+    }
+
+    private void methodRecord(byte type, String name, int id) throws IOException {
+        if (format == Format.JSONL) {
+            line("{\"type\":\"" + name + "\",\"method\":" + id + "}");
+        } else {
+            fields.writeByte(type);
+            fields.writeInt(id);
+            endRecord();
+        }
+    }
+
+    private void line(String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        fields.writeInt(bytes.length);
+        fields.write(bytes);
+    }
+
+    private void endRecord() throws IOException {
+        out.writeInt(record.size());
+        out.write(record.buffer(), 0, record.size());
+        record.reset();
+    }
+
+    static String quote(String s) {
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,198 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Description: Sources and sinks catalog in the format of SourcesAndSinks.txt, i.e. one definition per line
+ * <pre>
+ *     &lt;class: return name(params)&gt; [permission ...] -&gt; _SOURCE_|_SINK_|_BOTH_
+ * </pre>
+ * with '%' starting a comment line. The catalog is parsed in one streaming pass, definitions are
+ * normalized to Soot signatures and deduplicated, and the result is cached in a binary file next
+ * to the catalog ({@code <catalog>.bin}), which is reused as long as the catalog keeps its size and
+ * modification time.
+ */
+public class SourcesAndSinks {
+    private static final String TAG = SourcesAndSinks.class.getSimpleName();
+
+    private static final int CACHE_MAGIC = 0x53525353;   // "SRSS"
+    private static final int CACHE_VERSION = 1;
+
+    private final Set<String> sources;
+    private final Set<String> sinks;
+
+    private SourcesAndSinks(Set<String> sources, Set<String> sinks) {
+        this.sources = Collections.unmodifiableSet(sources);
+        this.sinks = Collections.unmodifiableSet(sinks);
+    }
+
+    public Set<String> getSources() {
+        return sources;
+    }
+
+    public Set<String> getSinks() {
+        return sinks;
+    }
+
+    /**
+     * Method: load
+     * Description: Load the catalog from its binary cache if it is up to date, otherwise parse it and refresh the cache.
+     * @param catalog the catalog file
+     * @return the sources and sinks of the catalog
+     * @throws IOException if the catalog cannot be read
+     */
+    public static SourcesAndSinks load(File catalog) throws IOException {
+        File cache = new File(catalog.getPath() + ".bin");
+        if (cache.isFile()) {
+            try {
+                SourcesAndSinks cached = readCache(cache, catalog);
+                if (cached != null) {
+                    return cached;
+                }
+            } catch (IOException e) {
+                Log.warn(TAG, "Ignoring unreadable cache %s: %s", cache, e.getMessage());
+            }
+        }
+
+        SourcesAndSinks parsed = parse(catalog);
+        try {
+            writeCache(cache, catalog, parsed);
+        } catch (IOException e) {
+            Log.warn(TAG, "Cannot write cache %s: %s", cache, e.getMessage());
+        }
+        return parsed;
+    }
+
+    /**
+     * Method: parse
+     * Description: Parse the catalog in one pass; malformed lines are reported and skipped.
+     * @param catalog the catalog file
+     * @return the sources and sinks of the catalog
+     * @throws IOException if the catalog cannot be read
+     */
+    public static SourcesAndSinks parse(File catalog) throws IOException {
+        Set<String> sources = new LinkedHashSet<>();
+        Set<String> sinks = new LinkedHashSet<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(catalog), 1 << 16)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '%') {
+                    continue;
+                }
+
+                int arrow = line.lastIndexOf("->");
+                String signature = arrow < 0 ? null : toSignature(line);
+                if (signature == null) {
+                    Log.warn(TAG, "%s:%d: cannot parse %s", catalog.getName(), lineNumber, line);
+                    continue;
+                }
+
+                String kind = line.substring(arrow + 2).trim();
+                if (kind.equals("_SOURCE_") || kind.equals("_BOTH_")) {
+                    sources.add(signature);
+                }
+                if (kind.equals("_SINK_") || kind.equals("_BOTH_")) {
+                    sinks.add(signature);
+                }
+            }
+        }
+
+        return new SourcesAndSinks(sources, sinks);
+    }
+
+    // Extract the Soot signature from the start of the line, null if malformed
+    private static String toSignature(String line) {
+        int colon = line.indexOf(':');
+        int open = line.indexOf('(', colon);
+        int close = line.indexOf(')', open);
+        if (line.charAt(0) != '<' || colon < 0 || open < 0 || close < 0
+                || close + 1 >= line.length() || line.charAt(close + 1) != '>') {
+            return null;
+        }
+
+        // Soot signatures have no blanks between parameter types
+        StringBuilder signature = new StringBuilder(close + 2);
+        signature.append(line, 0, colon).append(": ").append(line.substring(colon + 1, open).trim());
+        for (int i = open; i <= close; i++) {
+            char c = line.charAt(i);
+            if (c != ' ') {
+                signature.append(c);
+            }
+        }
+        signature.append('>');
+
+        return signature.toString();
+    }
+
+    private static SourcesAndSinks readCache(File cache, File catalog) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache), 1 << 16))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION
+                    || in.readLong() != catalog.length() || in.readLong() != catalog.lastModified()) {
+                return null;
+            }
+
+            Set<String> sources = readStrings(in);
+            Set<String> sinks = readStrings(in);
+            return new SourcesAndSinks(sources, sinks);
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Set<String> strings = new LinkedHashSet<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeCache(File cache, File catalog, SourcesAndSinks sourcesAndSinks) throws IOException {
+        // A name of its own, as processes sharing the catalog may refresh the cache at the same time
+        File tmp = File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile().getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeLong(catalog.length());
+            out.writeLong(catalog.lastModified());
+            writeStrings(out, sourcesAndSinks.sources);
+            writeStrings(out, sourcesAndSinks.sinks);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        // Replace the cache in one step so that a concurrent reader never sees half of it
+        if (!tmp.renameTo(cache)) {
+            cache.delete();
+            if (!tmp.renameTo(cache)) {
+                tmp.delete();
+                throw new IOException("cannot rename " + tmp + " to " + cache);
+            }
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package fu.hao.acteve.instrumentor;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Description: Index of the target definitions, resolved once against the Scene after the classes are loaded.
+ * It maps the sub-signature of every target to the numbers of all classes that declare the target
+ * or extend or implement a type that does, so that matching a method costs one hash probe and one bitset test,
+ * however many target definitions there are.
+ */
+public class TargetIndex {
+    private final Scene scene;
+    // sub-signature -> numbers of the classes on which a method with that sub-signature is a target
+    private final Map<String, BitSet> targets = new HashMap<>();
+
+    private TargetIndex(Scene scene) {
+        this.scene = scene;
+    }
+
+    /**
+     * Method: build
+     * Description: Resolve the target definitions against the current Scene; definitions whose
+     * methods are not in the Scene are skipped.
+     * @param targetDefs the method signatures of the targets
+     * @return the target index of the current Scene
+     */
+    public static TargetIndex build(Collection<String> targetDefs) {
+        Scene scene = Scene.v();
+        TargetIndex index = new TargetIndex(scene);
+
+        TypeHierarchy hierarchy = TypeHierarchy.v();
+        // The subtype closure of each declaring class, shared by all targets it declares
+        Map<SootClass, BitSet> closures = new HashMap<>();
+        for (String def : targetDefs) {
+            if (!scene.containsMethod(def)) {
+                continue;
+            }
+            SootMethod defMethod = scene.getMethod(def);
+            SootClass declaringClass = defMethod.getDeclaringClass();
+            BitSet closure = closures.get(declaringClass);
+            if (closure == null) {
+                closure = hierarchy.subtypesOf(declaringClass);
+                closures.put(declaringClass, closure);
+            }
+
+            BitSet matching = index.targets.get(defMethod.getSubSignature());
+            if (matching == null) {
+                matching = new BitSet();
+                index.targets.put(defMethod.getSubSignature(), matching);
+            }
+            matching.or(closure);
+        }
+
+        return index;
+    }
+
+    /**
+     * Whether this index was built for the current Scene.
+     */
+    public boolean isCurrent() {
+        return scene == Scene.v();
+    }
+
+    /**
+     * Whether {@code sootMethod} is one of the targets, or overrides one of them.
+     */
+    public boolean matches(SootMethod sootMethod) {
+        BitSet matching = targets.get(sootMethod.getSubSignature());
+        return matching != null && matching.get(sootMethod.getDeclaringClass().getNumber());
+    }
+
+    /**
+     * Returns the number of distinct target sub-signatures.
+     */
+    public int size() {
+        return targets.size();
+    }
+}
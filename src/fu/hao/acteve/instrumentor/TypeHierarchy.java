@@ -0,0 +1,201 @@
+package fu.hao.acteve.instrumentor;
+
+import soot.Scene;
+import soot.SootClass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Description: Precomputed type hierarchy of the classes in the Scene, covering superclasses and interfaces.
+ * <p>
+ * The superclass tree is numbered by a depth-first walk, so that {@code klass} extends {@code superKlass}
+ * iff the pre-order number of {@code klass} lies in the interval of {@code superKlass}. Every type also keeps
+ * the sorted numbers of all interfaces it implements, directly or not. Thus a subtype check is a constant-time
+ * interval test against a class, or a binary search over a handful of interfaces against an interface.
+ * Types are identified by their Soot class numbers. Classes added to the Scene after the hierarchy was
+ * built are answered by walking their supertypes.
+ */
+public class TypeHierarchy {
+    private static final int[] NO_INTERFACES = new int[0];
+
+    private static TypeHierarchy instance = null;
+
+    private final Scene scene;
+    private final SootClass[] classes;  // classes[c] = class of number c, null if none
+    private final int[] pre;            // pre-order number of c in the superclass tree
+    private final int[] post;           // pre-order number after the subtree of c
+    private final SootClass[] byPre;    // byPre[pre[c]] = classes[c]
+    private final int[][] interfaces;   // sorted numbers of all interfaces c implements, itself excluded
+
+    /**
+     * Returns the hierarchy of the current Scene, building it on first use after each {@code soot.G.reset()}.
+     */
+    public static TypeHierarchy v() {
+        if (instance == null || instance.scene != Scene.v()) {
+            instance = new TypeHierarchy(Scene.v());
+        }
+        return instance;
+    }
+
+    private TypeHierarchy(Scene scene) {
+        this.scene = scene;
+
+        int size = 0;
+        for (SootClass klass : scene.getClasses()) {
+            size = Math.max(size, klass.getNumber() + 1);
+        }
+        classes = new SootClass[size];
+        for (SootClass klass : scene.getClasses()) {
+            classes[klass.getNumber()] = klass;
+        }
+
+        // Children in the superclass tree, roots are the classes without a known superclass
+        List<List<SootClass>> children = new ArrayList<>(size);
+        for (int c = 0; c < size; c++) {
+            children.add(null);
+        }
+        List<SootClass> roots = new ArrayList<>();
+        for (SootClass klass : classes) {
+            if (klass == null) {
+                continue;
+            }
+            SootClass superKlass = klass.hasSuperclass() ? klass.getSuperclass() : null;
+            if (superKlass == null || !isIndexed(superKlass)) {
+                roots.add(klass);
+                continue;
+            }
+            List<SootClass> siblings = children.get(superKlass.getNumber());
+            if (siblings == null) {
+                siblings = new ArrayList<>();
+                children.set(superKlass.getNumber(), siblings);
+            }
+            siblings.add(klass);
+        }
+
+        // Number the tree iteratively, parents before children
+        pre = new int[size];
+        post = new int[size];
+        byPre = new SootClass[size];
+        interfaces = new int[size][];
+        int counter = 0;
+        int[] stack = new int[size];
+        int[] childIndex = new int[size];
+        for (SootClass root : roots) {
+            int top = 0;
+            stack[0] = root.getNumber();
+            childIndex[0] = 0;
+            pre[stack[0]] = counter;
+            byPre[counter++] = root;
+            while (top >= 0) {
+                int c = stack[top];
+                List<SootClass> kids = children.get(c);
+                if (kids != null && childIndex[top] < kids.size()) {
+                    SootClass kid = kids.get(childIndex[top]++);
+                    stack[++top] = kid.getNumber();
+                    childIndex[top] = 0;
+                    pre[kid.getNumber()] = counter;
+                    byPre[counter++] = kid;
+                } else {
+                    post[c] = counter;
+                    top--;
+                }
+            }
+        }
+
+        // Parents come first in pre-order, so their interfaces are known when their children need them
+        for (int i = 0; i < counter; i++) {
+            interfacesOf(byPre[i]);
+        }
+    }
+
+    private boolean isIndexed(SootClass klass) {
+        int c = klass.getNumber();
+        return c < classes.length && classes[c] == klass;
+    }
+
+    // All interfaces klass implements, memoized for indexed classes
+    private int[] interfacesOf(SootClass klass) {
+        int c = klass.getNumber();
+        boolean indexed = isIndexed(klass);
+        if (indexed && interfaces[c] != null) {
+            return interfaces[c];
+        }
+
+        BitSet all = new BitSet();
+        if (klass.hasSuperclass()) {
+            for (int i : interfacesOf(klass.getSuperclass())) {
+                all.set(i);
+            }
+        }
+        for (SootClass iface : klass.getInterfaces()) {
+            all.set(iface.getNumber());
+            for (int i : interfacesOf(iface)) {
+                all.set(i);
+            }
+        }
+
+        int[] result = all.isEmpty() ? NO_INTERFACES : all.stream().toArray();
+        if (indexed) {
+            interfaces[c] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Whether {@code klass} is {@code superType}, extends it or implements it, directly or not.
+     */
+    public boolean isSubtype(SootClass klass, SootClass superType) {
+        if (klass == superType) {
+            return true;
+        }
+
+        if (superType.isInterface()) {
+            return Arrays.binarySearch(interfacesOf(klass), superType.getNumber()) >= 0;
+        }
+        if (isIndexed(klass) && isIndexed(superType)) {
+            int p = pre[klass.getNumber()];
+            return pre[superType.getNumber()] <= p && p < post[superType.getNumber()];
+        }
+
+        while (klass.hasSuperclass()) {
+            klass = klass.getSuperclass();
+            if (klass == superType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the numbers of all classes of the Scene that are subtypes of {@code superType}, itself included.
+     */
+    public BitSet subtypesOf(SootClass superType) {
+        BitSet subtypes = new BitSet(classes.length);
+        if (!isIndexed(superType)) {
+            for (SootClass klass : classes) {
+                if (klass != null && isSubtype(klass, superType)) {
+                    subtypes.set(klass.getNumber());
+                }
+            }
+            subtypes.set(superType.getNumber());
+            return subtypes;
+        }
+
+        // The subclasses are a contiguous range in pre-order
+        int c = superType.getNumber();
+        for (int i = pre[c]; i < post[c]; i++) {
+            subtypes.set(byPre[i].getNumber());
+        }
+        if (superType.isInterface()) {
+            for (SootClass klass : classes) {
+                if (klass != null && Arrays.binarySearch(interfacesOf(klass), c) >= 0) {
+                    subtypes.set(klass.getNumber());
+                }
+            }
+        }
+        return subtypes;
+    }
+}
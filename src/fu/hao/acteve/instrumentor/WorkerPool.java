@@ -0,0 +1,267 @@
+package fu.hao.acteve.instrumentor;
+
+import fu.hao.utils.Log;
+import fu.hao.utils.Settings;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Analyzes a corpus of APKs on {@code Settings.getWorkers()} worker JVMs.
+ * <p>
+ * Soot keeps its state in global singletons, so apps cannot be analyzed by threads of one JVM. Instead,
+ * every worker is an {@link AnalysisWorker} process started with {@code -Xmx} set to
+ * {@code Settings.getWorkerHeap()}, which takes APK paths on stdin and answers with result lines on stdout.
+ * Each worker is driven by one thread of the pool, which hands it the next APK of a shared queue. An app
+ * running longer than {@code Settings.getAppTimeout()} gets its worker killed, and a worker that dies
+ * (e.g. out of memory) is replaced before the next app. One line per app goes to {@code summary.tsv} in
+ * the output directory as soon as it is done, the stderr of worker {@code i} to {@code worker-i.log} and
+ * its log to {@code analysis-i.log}. The binary cache of the catalog is built by the pool before any worker
+ * starts, so that the workers only read it.
+ * Usage: {@code WorkerPool <directory|list> [catalog]}, see {@link BatchMain} for the corpus formats.
+ */
+public class WorkerPool {
+    private static final String TAG = WorkerPool.class.getSimpleName();
+
+    static final String RESULT_PREFIX = "@@RESULT\t";
+    static final String STATUS_OK = "ok";
+    static final String STATUS_FAILED = "failed";
+    static final String STATUS_TIMEOUT = "timeout";
+    static final String STATUS_CRASHED = "crashed";
+
+    private static final String END_OF_STREAM = "";   // never a complete result line
+
+    private final List<String> command;     // without the arguments of the worker
+    private final String catalog;
+    private final File outputDirectory;
+    private final long timeout;
+    private final ConcurrentLinkedQueue<File> queue = new ConcurrentLinkedQueue<>();
+    private final PrintWriter summary;
+    private int done = 0;
+    private int failed = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Settings.setLogLevel(0);
+
+        List<File> apks = BatchMain.listApks(new File(args[0]));
+        String catalog = args.length > 1 ? args[1] : null;
+        if (catalog != null) {
+            Settings.setTargetCatalog(catalog);
+            Main.loadTargetCatalog();
+        }
+
+        File outputDirectory = new File(Settings.getOutputDirectory());
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("cannot create " + outputDirectory);
+        }
+        WorkerPool pool = new WorkerPool(catalog, outputDirectory, Settings.getWorkerHeap(), Settings.getAppTimeout());
+        pool.run(apks, Settings.getWorkers());
+    }
+
+    public WorkerPool(String catalog, File outputDirectory, String heap, long timeout) throws IOException {
+        command = new ArrayList<>(Arrays.asList(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-Xmx" + heap, "-XX:+ExitOnOutOfMemoryError",
+                "-cp", System.getProperty("java.class.path"),
+                AnalysisWorker.class.getName()));
+        this.catalog = catalog;
+        this.outputDirectory = outputDirectory;
+        this.timeout = timeout;
+        summary = new PrintWriter(new BufferedWriter(new FileWriter(new File(outputDirectory, "summary.tsv"))));
+        summary.println("apk\tstatus\tentries\ttargets\tpaths\tmillis\tmessage");
+        summary.flush();
+    }
+
+    /**
+     * Method: run
+     * Description: Analyze all of [apks] on [workers] worker processes and wait for them to finish.
+     * @param apks the APKs to analyze
+     * @param workers the number of worker processes
+     */
+    public void run(List<File> apks, int workers) throws InterruptedException {
+        queue.addAll(apks);
+        long start = System.nanoTime();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, apks.size()); i++) {
+            Thread thread = new Thread(new Slot(i), TAG + "-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        summary.close();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Log.msg(TAG, "Analyzed %d apps (%d not ok) on %d workers in %.1f s, %.1f apps/hour",
+                done, failed, threads.size(), seconds, seconds > 0 ? done * 3600 / seconds : 0.0);
+    }
+
+    private synchronized void report(String fields) {
+        summary.println(fields);
+        summary.flush();
+
+        String[] columns = fields.split("\t", -1);
+        done++;
+        if (!columns[1].equals(STATUS_OK)) {
+            failed++;
+        }
+        Log.msg(TAG, "[%d] %s: %s in %s ms %s", done, columns[0], columns[1], columns[5], columns[6]);
+    }
+
+    /**
+     * Method: resultLine
+     * Description: Format the result of one app for the protocol between workers and pool.
+     * Negative counts are left empty, tabs and line breaks in [apk] and [message] become blanks.
+     */
+    static String resultLine(String apk, String status, int entries, int targets, int paths, long millis,
+                             String message) {
+        return RESULT_PREFIX + clean(apk) + '\t' + status + '\t' + count(entries) + '\t' + count(targets) + '\t'
+                + count(paths) + '\t' + millis + '\t' + clean(message);
+    }
+
+    private static String count(int n) {
+        return n < 0 ? "" : String.valueOf(n);
+    }
+
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * One worker process and the thread feeding it.
+     */
+    private class Slot implements Runnable {
+        private final int index;
+        private Process process = null;
+        private Writer toWorker = null;
+        private BlockingQueue<String> results = null;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            File apk;
+            try {
+                while ((apk = queue.poll()) != null) {
+                    report(analyze(apk));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                stop(false);
+            }
+        }
+
+        private String analyze(File apk) throws InterruptedException {
+            long start = System.nanoTime();
+            try {
+                if (process == null) {
+                    start();
+                }
+                toWorker.write(apk.getPath() + "\n");
+                toWorker.flush();
+            } catch (IOException e) {
+                stop(true);
+                return resultLine(apk.getPath(), STATUS_CRASHED, -1, -1, -1, elapsed(start),
+                        "cannot start worker: " + e).substring(RESULT_PREFIX.length());
+            }
+
+            String result = results.poll(timeout, TimeUnit.MILLISECONDS);
+            if (result == null) {
+                stop(true);
+                return resultLine(apk.getPath(), STATUS_TIMEOUT, -1, -1, -1, elapsed(start),
+                        "killed after " + timeout + " ms").substring(RESULT_PREFIX.length());
+            }
+            if (result.isEmpty()) {
+                stop(true);
+                return resultLine(apk.getPath(), STATUS_CRASHED, -1, -1, -1, elapsed(start),
+                        "worker exited, see worker-" + index + ".log").substring(RESULT_PREFIX.length());
+            }
+            return result;
+        }
+
+        private long elapsed(long start) {
+            return (System.nanoTime() - start) / 1000000;
+        }
+
+        private void start() throws IOException {
+            List<String> arguments = new ArrayList<>(command);
+            arguments.add(String.valueOf(index));
+            if (catalog != null) {
+                arguments.add(catalog);
+            }
+            ProcessBuilder builder = new ProcessBuilder(arguments);
+            builder.redirectError(ProcessBuilder.Redirect.appendTo(new File(outputDirectory, "worker-" + index + ".log")));
+            process = builder.start();
+            toWorker = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+
+            // Pick the result lines out of the worker's stdout until it ends
+            final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+            final BufferedReader fromWorker = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        String line;
+                        while ((line = fromWorker.readLine()) != null) {
+                            if (line.startsWith(RESULT_PREFIX)) {
+                                lines.add(line.substring(RESULT_PREFIX.length()));
+                            }
+                        }
+                    } catch (IOException e) {
+                        // The worker was killed
+                    } finally {
+                        lines.add(END_OF_STREAM);
+                    }
+                }
+            }, TAG + "-" + index + "-reader");
+            reader.setDaemon(true);
+            reader.start();
+            results = lines;
+        }
+
+        // Kill the worker, or let it finish by closing its stdin
+        private void stop(boolean kill) {
+            if (process == null) {
+                return;
+            }
+            if (kill) {
+                process.destroyForcibly();
+            }
+            try {
+                toWorker.close();
+            } catch (IOException e) {
+                // The worker is gone already
+            }
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+            process = null;
+            toWorker = null;
+            results = null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package fu.hao.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Description: Minimal timing harness for the benchmark drivers: runs a task for a number of
+ * warm-up rounds, then reports the median and the best of the measured rounds. A task can have a
+ * fixture, which is set up anew before every round and not timed, e.g. a filled queue to drain.
+ */
+public class Bench {
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    public interface Fixture<T> {
+        T create() throws Exception;
+    }
+
+    public interface FixtureTask<T> {
+        void run(T fixture) throws Exception;
+    }
+
+    /**
+     * Returns the median wall time of {@code rounds} runs of {@code task} in milliseconds.
+     */
+    public static double measure(String name, int warmups, int rounds, final Task task) throws Exception {
+        return measure(name, warmups, rounds, () -> null, fixture -> task.run());
+    }
+
+    /**
+     * Returns the median wall time of {@code rounds} runs of {@code task} in milliseconds, each on a
+     * fixture of its own created beforehand.
+     */
+    public static <T> double measure(String name, int warmups, int rounds, Fixture<T> fixture, FixtureTask<T> task)
+            throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            task.run(fixture.create());
+        }
+
+        double[] millis = new double[rounds];
+        for (int i = 0; i < rounds; i++) {
+            T input = fixture.create();
+            long start = System.nanoTime();
+            task.run(input);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+
+        double median = millis[rounds / 2];
+        System.out.println(String.format("%-48s median %10.3f ms   best %10.3f ms", name, median, millis[0]));
+        return median;
+    }
+}
@@ -0,0 +1,33 @@
+package fu.hao.benchmark;
+
+/**
+ * Description: Runs all benchmark drivers in a fixed order, for numbers to compare before and after a
+ * performance change. The synthetic graphs and keys are seeded, so every run measures the same inputs;
+ * compare runs on the same machine and JVM, which are printed first, with a fixed heap, e.g. -Xms4g -Xmx4g.
+ * Execution: java fu.hao.benchmark.BenchmarkSuite
+ */
+public class BenchmarkSuite {
+    public static void main(String[] args) throws Exception {
+        System.out.println(String.format("%s %s, %d processors, max heap %d MB", System.getProperty("java.vm.name"),
+                System.getProperty("java.version"), Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().maxMemory() >> 20));
+
+        section("IndexMinPQ");
+        IndexMinPQBenchmark.main(new String[0]);
+        section("Traversals");
+        TraversalBenchmark.main(new String[0]);
+        section("Shortest paths");
+        ShortestPathBenchmark.main(new String[0]);
+        section("Path discovery");
+        PathDiscoveryBenchmark.main(new String[0]);
+        section("Caller walk");
+        CallerWalkBenchmark.main(new String[0]);
+        section("Log");
+        LogBenchmark.main(new String[0]);
+    }
+
+    private static void section(String name) {
+        System.out.println();
+        System.out.println("== " + name);
+    }
+}
@@ -0,0 +1,63 @@
+package fu.hao.benchmark;
+
+import fu.hao.acteve.instrumentor.MethodUtils;
+import soot.Scene;
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Description: Regression benchmark for the reverse reachability walk of {@code MethodUtils.findSubCGIn}
+ * on deep caller chains whose depth and width double from run to run. The time per edge of the
+ * bitset walk should stay flat, while the former walk, which checked queue membership on a
+ * {@code LinkedList} and re-expanded dequeued methods, grows with the size of the graph.
+ * Execution: java fu.hao.benchmark.CallerWalkBenchmark
+ */
+public class CallerWalkBenchmark {
+    private static final int CALLERS = 2;
+
+    public static void main(String[] args) throws Exception {
+        for (int depth = 250; depth <= 2000; depth *= 2) {
+            final SyntheticCallGraphs graph = SyntheticCallGraphs.layered(depth, depth / 5, CALLERS, 42);
+            Scene.v().setCallGraph(graph.getCallGraph());
+            MethodUtils.invalidateCompactCallGraph();
+            MethodUtils.getCompactCallGraph();
+            int edges = graph.getCallGraph().size();
+
+            double millis = Bench.measure("findSubCGIn depth " + depth + ", " + edges + " E", 2, 5,
+                    () -> MethodUtils.findSubCGIn(graph.getLast()));
+            System.out.println(String.format("    %.1f ns per edge", millis * 1e6 / edges));
+            if (depth <= 1000) {
+                millis = Bench.measure("LinkedList walk depth " + depth + ", " + edges + " E", 0, 1,
+                        () -> linkedListWalk(graph.getCallGraph(), graph.getLast()));
+                System.out.println(String.format("    %.1f ns per edge", millis * 1e6 / edges));
+            }
+        }
+    }
+
+    // The walk findSubCGIn did before it ran on the compact call graph
+    private static CallGraph linkedListWalk(CallGraph callGraph, SootMethod sootMethod) {
+        CallGraph subGraph = new CallGraph();
+        Queue<SootMethod> unprocessed = new LinkedList<>();
+        unprocessed.add(sootMethod);
+
+        while (!unprocessed.isEmpty()) {
+            sootMethod = unprocessed.poll();
+            Iterator<Edge> edges = callGraph.edgesInto(sootMethod);
+            while (edges.hasNext()) {
+                Edge edge = edges.next();
+                SootMethod src = edge.src();
+                if (!unprocessed.contains(src)) {
+                    unprocessed.add(src);
+                }
+                subGraph.addEdge(edge);
+            }
+        }
+
+        return subGraph;
+    }
+}
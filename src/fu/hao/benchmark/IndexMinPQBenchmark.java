@@ -0,0 +1,63 @@
+package fu.hao.benchmark;
+
+import fu.hao.utils.IndexMinPQ;
+
+import java.util.Random;
+
+/**
+ * Description: Times the operations of {@link IndexMinPQ} separately, on queues of 10k to 1M random keys:
+ * inserting all keys, decreasing the key of every other index, and deleting the minimum until the queue
+ * is empty. The queue each operation starts from is built before the timed part.
+ * Execution: java fu.hao.benchmark.IndexMinPQBenchmark
+ */
+public class IndexMinPQBenchmark {
+    private static final int[] SIZES = {10000, 100000, 1000000};
+
+    public static void main(String[] args) throws Exception {
+        for (final int n : SIZES) {
+            final Integer[] keys = new Integer[n];
+            final Integer[] smallerKeys = new Integer[n];
+            Random random = new Random(42);
+            for (int i = 0; i < n; i++) {
+                keys[i] = random.nextInt(Integer.MAX_VALUE);
+                smallerKeys[i] = keys[i] - random.nextInt(keys[i] + 1);
+            }
+
+            double millis = Bench.measure("IndexMinPQ insert " + n, 2, 7, () -> new IndexMinPQ<Integer>(n),
+                    pq -> {
+                        for (int i = 0; i < n; i++) {
+                            pq.insert(i, keys[i]);
+                        }
+                    });
+            report(millis, n);
+            millis = Bench.measure("IndexMinPQ decreaseKey " + n / 2, 2, 7, () -> filled(keys),
+                    pq -> {
+                        for (int i = 0; i < n; i += 2) {
+                            if (smallerKeys[i] < keys[i]) {
+                                pq.decreaseKey(i, smallerKeys[i]);
+                            }
+                        }
+                    });
+            report(millis, n / 2);
+            millis = Bench.measure("IndexMinPQ delMin " + n, 2, 7, () -> filled(keys),
+                    pq -> {
+                        while (!pq.isEmpty()) {
+                            pq.delMin();
+                        }
+                    });
+            report(millis, n);
+        }
+    }
+
+    private static IndexMinPQ<Integer> filled(Integer[] keys) {
+        IndexMinPQ<Integer> pq = new IndexMinPQ<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            pq.insert(i, keys[i]);
+        }
+        return pq;
+    }
+
+    private static void report(double millis, int operations) {
+        System.out.println(String.format("    %.1f ns per operation", millis * 1e6 / operations));
+    }
+}
@@ -0,0 +1,63 @@
+package fu.hao.benchmark;
+
+import fu.hao.utils.AsyncLogAppender;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Description: Lines per second written to the log file by the former {@code Log.writeLog}, which opened
+ * and closed a {@code FileWriter} for every line, and by the {@link AsyncLogAppender} in its
+ * asynchronous and blocking modes. The asynchronous rounds include the final flush, so all three
+ * measure lines that are actually in the file.
+ * Execution: java fu.hao.benchmark.LogBenchmark
+ */
+public class LogBenchmark {
+    private static final int LINES = 100000;
+
+    public static void main(String[] args) throws Exception {
+        final File file = File.createTempFile("log-benchmark", ".log");
+        file.deleteOnExit();
+        final String[] lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = "Main - [MSG]: node: <com.example.app.Activity" + (i % 97) + ": void onClick(android.view.View)>";
+        }
+
+        report(Bench.measure("FileWriter per line, " + LINES + " lines", 1, 5, () -> {
+            file.delete();
+            for (String line : lines) {
+                legacyWriteLog(file, line);
+            }
+        }));
+        report(Bench.measure("AsyncLogAppender, " + LINES + " lines", 1, 5, () -> {
+            file.delete();
+            AsyncLogAppender appender = new AsyncLogAppender(file, 8192, false);
+            for (String line : lines) {
+                appender.append(line);
+            }
+            appender.close();
+        }));
+        report(Bench.measure("AsyncLogAppender blocking, " + LINES + " lines", 1, 5, () -> {
+            file.delete();
+            AsyncLogAppender appender = new AsyncLogAppender(file, 8192, true);
+            for (String line : lines) {
+                appender.append(line);
+            }
+            appender.close();
+        }));
+    }
+
+    private static void report(double millis) {
+        System.out.println(String.format("    %.0f lines/s", LINES * 1000 / millis));
+    }
+
+    // What Log.writeLog did for every line before it kept the file open
+    private static void legacyWriteLog(File file, String line) throws IOException {
+        Writer output = new BufferedWriter(new FileWriter(file, true));
+        output.append(line + "\n");
+        output.close();
+    }
+}
@@ -0,0 +1,95 @@
+package fu.hao.benchmark;
+
+import fu.hao.acteve.instrumentor.Main;
+import fu.hao.acteve.instrumentor.PackageFilter;
+import fu.hao.utils.Settings;
+import fu.hao.utils.Statistics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Description: Analyzes each APK with the {@link PackageFilter} off and on, and reports the size of the call
+ * graph, the time to build it, the time of the whole analysis and the heap high-water mark of both, with what
+ * the filter saves. After a warm-up analysis of each setting, the settings take turns going first over
+ * ROUNDS rounds, so that neither is credited with the warm-up of the JVM, and the medians are reported.
+ * The analysis cache, call graph snapshots and incremental analysis are turned off, so that every run
+ * builds the call graph from scratch.
+ * Execution: java fu.hao.benchmark.PackageFilterBenchmark apk...
+ */
+public class PackageFilterBenchmark {
+    private static final int ROUNDS = 5;
+
+    private static class Run {
+        long nodes;
+        long edges;
+        double callGraphMillis;
+        double millis;
+        long heapPeakBytes;
+        long excludedClasses;
+        long summaryEdges;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Settings.setAnalysisCacheEnabled(false);
+        Settings.setCallGraphSnapshotEnabled(false);
+        Settings.setIncrementalEnabled(false);
+        Settings.setGenerateStats(true);
+
+        for (String apk : args) {
+            run(apk, false);
+            run(apk, true);
+            Run[] off = new Run[ROUNDS];
+            Run[] on = new Run[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                if (i % 2 == 0) {
+                    off[i] = run(apk, false);
+                    on[i] = run(apk, true);
+                } else {
+                    on[i] = run(apk, true);
+                    off[i] = run(apk, false);
+                }
+            }
+            System.out.println(String.format("%s: %d classes excluded, %d summary edges, median of %d rounds", apk,
+                    on[0].excludedClasses, on[0].summaryEdges, ROUNDS));
+            System.out.println(String.format("    %-18s %12s %12s %12s", "", "filter off", "filter on", "saved"));
+            report("call graph nodes", off[0].nodes, on[0].nodes);
+            report("call graph edges", off[0].edges, on[0].edges);
+            report("call graph ms", median(off, run -> run.callGraphMillis), median(on, run -> run.callGraphMillis));
+            report("analysis ms", median(off, run -> run.millis), median(on, run -> run.millis));
+            report("heap peak MB", median(off, run -> run.heapPeakBytes >> 20),
+                    median(on, run -> run.heapPeakBytes >> 20));
+        }
+    }
+
+    private static Run run(String apk, boolean filtered) throws IOException {
+        Settings.setPackageFilterEnabled(filtered);
+        System.gc();
+        long start = System.nanoTime();
+        Main.analyze(apk);
+        Run run = new Run();
+        run.millis = (System.nanoTime() - start) / 1e6;
+        run.nodes = Statistics.getCount("nodes");
+        run.edges = Statistics.getCount("edges");
+        run.callGraphMillis = Statistics.getMillis(Statistics.Phase.CALL_GRAPH);
+        run.heapPeakBytes = Statistics.getHeapPeakBytes();
+        run.excludedClasses = Statistics.getCount("excludedClasses");
+        run.summaryEdges = Statistics.getCount("summaryEdges");
+        return run;
+    }
+
+    private static double median(Run[] runs, ToDoubleFunction<Run> metric) {
+        double[] values = new double[runs.length];
+        for (int i = 0; i < runs.length; i++) {
+            values[i] = metric.applyAsDouble(runs[i]);
+        }
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private static void report(String metric, double off, double on) {
+        System.out.println(String.format("    %-18s %12.1f %12.1f %11.1f%%", metric, off, on,
+                off > 0 ? 100 * (off - on) / off : 0));
+    }
+}
@@ -0,0 +1,55 @@
+package fu.hao.benchmark;
+
+import fu.hao.acteve.instrumentor.CompactCallGraph;
+import fu.hao.acteve.instrumentor.NearestTargetSP;
+import fu.hao.acteve.instrumentor.PathDiscovery;
+import fu.hao.utils.Log;
+import fu.hao.utils.Settings;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Description: Times {@link PathDiscovery} on a random call graph with 1, 2, 4 and 8 threads and reports the
+ * speedup over one thread, checking that every thread count finds the same paths. The speedup is bounded
+ * by the number of processors, which is printed first.
+ * Execution: java fu.hao.benchmark.PathDiscoveryBenchmark [edges]
+ */
+public class PathDiscoveryBenchmark {
+    public static void main(String[] args) throws Exception {
+        int edges = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        System.out.println(String.format("%d processors", Runtime.getRuntime().availableProcessors()));
+        // Every entry stops at the path cap, do not time the warnings
+        Settings.setLogLevel(Log.MODE_ERROR);
+
+        SyntheticCallGraphs graph = SyntheticCallGraphs.random(edges, 4, 11);
+        SootMethod[] methods = graph.getMethods();
+        List<SootMethod> targets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            targets.add(methods[methods.length / 5 + i * (methods.length / 50)]);
+        }
+        final List<SootMethod> entries = Arrays.asList(methods).subList(0, 64);
+        final NearestTargetSP nearestTargets = new NearestTargetSP(CompactCallGraph.of(graph.getCallGraph()), targets);
+
+        List<List<SootMethod>> expected = null;
+        double sequential = 0;
+        for (final int threads : new int[]{1, 2, 4, 8}) {
+            final PathDiscovery pathDiscovery = new PathDiscovery(nearestTargets, threads, 2000, 14, 0);
+            List<List<SootMethod>> paths = pathDiscovery.discover(entries, null);
+            if (expected == null) {
+                expected = paths;
+            } else if (!expected.equals(paths)) {
+                throw new AssertionError(threads + " threads found other paths than 1 thread");
+            }
+
+            double millis = Bench.measure(String.format("discover %d paths, %d threads", paths.size(), threads),
+                    1, 5, () -> pathDiscovery.discover(entries, null));
+            if (threads == 1) {
+                sequential = millis;
+            }
+            System.out.println(String.format("    speedup over 1 thread: %.2f", sequential / millis));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package fu.hao.benchmark;
+
+import fu.hao.acteve.instrumentor.CallGraphSP;
+import fu.hao.acteve.instrumentor.CompactCallGraph;
+import fu.hao.acteve.instrumentor.DijkstraSP;
+
+/**
+ * Description: Compares {@link DijkstraSP} with the BFS and Dijkstra modes of {@link CallGraphSP}
+ * on random call graphs of 10k to 1M edges.
+ * Execution: java fu.hao.benchmark.ShortestPathBenchmark [maxVerticesForDijkstraSP]
+ * DijkstraSP needs time quadratic in V, so it is skipped above maxVerticesForDijkstraSP (default 20000).
+ */
+public class ShortestPathBenchmark {
+    private static final int[] EDGES = {10000, 100000, 1000000};
+    private static final int FAN_OUT = 5;
+
+    public static void main(String[] args) throws Exception {
+        int maxVerticesForDijkstraSP = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        for (int edges : EDGES) {
+            final SyntheticCallGraphs graph = SyntheticCallGraphs.random(edges, FAN_OUT, 42);
+            final CompactCallGraph callGraph = CompactCallGraph.of(graph.getCallGraph());
+            String size = callGraph.size() + " V / " + callGraph.edgeCount() + " E";
+
+            Bench.measure("CompactCallGraph.of " + size, 1, 5, () -> CompactCallGraph.of(graph.getCallGraph()));
+            Bench.measure("CallGraphSP bfs " + size, 3, 11,
+                    () -> new CallGraphSP(callGraph, graph.getRoot()).methodsTo(graph.getLast()));
+            Bench.measure("CallGraphSP dijkstra " + size, 3, 11,
+                    () -> new CallGraphSP(callGraph, graph.getRoot(), e -> 1).methodsTo(graph.getLast()));
+            if (callGraph.size() <= maxVerticesForDijkstraSP) {
+                Bench.measure("DijkstraSP " + size, 1, 3,
+                        () -> new DijkstraSP(graph.getCallGraph(), graph.getRoot()).pathTo(graph.getLast()));
+            } else {
+                System.out.println("DijkstraSP " + size + " skipped (quadratic in V)");
+            }
+        }
+    }
+}
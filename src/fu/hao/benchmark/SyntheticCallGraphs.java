@@ -0,0 +1,167 @@
+package fu.hao.benchmark;
+
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.VoidType;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.Kind;
+
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Description: Generates Soot call graphs of a given size without loading an APK or the Android SDK.
+ * Method 0 is the root; every other method has at least one caller with a smaller ID, so the whole
+ * graph is reachable from the root, and the remaining edges connect random pairs of methods.
+ */
+public class SyntheticCallGraphs {
+    private final SootMethod[] methods;
+    private final CallGraph callGraph;
+
+    private SyntheticCallGraphs(SootMethod[] methods, CallGraph callGraph) {
+        this.methods = methods;
+        this.callGraph = callGraph;
+    }
+
+    /**
+     * Random call graph with {@code edges} edges over {@code edges / fanOut} methods.
+     */
+    public static SyntheticCallGraphs random(int edges, int fanOut, long seed) {
+        Random random = new Random(seed);
+        SootMethod[] methods = newMethods(Math.max(2, edges / fanOut));
+        CallGraph callGraph = new CallGraph();
+
+        for (int v = 1; v < methods.length; v++) {
+            addEdge(callGraph, methods[random.nextInt(v)], methods[v]);
+        }
+        while (callGraph.size() < edges) {
+            addEdge(callGraph, methods[random.nextInt(methods.length)], methods[random.nextInt(methods.length)]);
+        }
+
+        return new SyntheticCallGraphs(methods, callGraph);
+    }
+
+    /**
+     * A single caller chain of {@code length} methods, method {@code i} calling method {@code i + 1}.
+     */
+    public static SyntheticCallGraphs chain(int length) {
+        SootMethod[] methods = newMethods(length);
+        CallGraph callGraph = new CallGraph();
+        for (int v = 1; v < methods.length; v++) {
+            addEdge(callGraph, methods[v - 1], methods[v]);
+        }
+
+        return new SyntheticCallGraphs(methods, callGraph);
+    }
+
+    /**
+     * A deep caller chain of {@code depth} levels of {@code width} methods each, every method of a level
+     * being called by {@code callers} random methods of the level above; the root calls the whole first level.
+     * The last method is at the bottom level.
+     */
+    public static SyntheticCallGraphs layered(int depth, int width, int callers, long seed) {
+        Random random = new Random(seed);
+        SootMethod[] methods = newMethods(1 + depth * width);
+        CallGraph callGraph = new CallGraph();
+
+        for (int v = 1; v <= width; v++) {
+            addEdge(callGraph, methods[0], methods[v]);
+        }
+        for (int level = 1; level < depth; level++) {
+            int above = 1 + (level - 1) * width;
+            for (int v = 1 + level * width; v < 1 + (level + 1) * width; v++) {
+                for (int i = 0; i < callers; i++) {
+                    addEdge(callGraph, methods[above + random.nextInt(width)], methods[v]);
+                }
+            }
+        }
+
+        return new SyntheticCallGraphs(methods, callGraph);
+    }
+
+    /**
+     * The fan-out of UI callbacks: the root calls {@code dispatchers} lifecycle methods, each of which calls
+     * all of {@code handlers} callbacks, and every callback calls {@code callees} random methods of a shared
+     * pool of {@code handlers} helpers. The last method is a helper.
+     */
+    public static SyntheticCallGraphs uiCallbacks(int dispatchers, int handlers, int callees, long seed) {
+        Random random = new Random(seed);
+        SootMethod[] methods = newMethods(1 + dispatchers + 2 * handlers);
+        CallGraph callGraph = new CallGraph();
+        int firstHandler = 1 + dispatchers;
+        int firstHelper = firstHandler + handlers;
+
+        for (int d = 1; d < firstHandler; d++) {
+            addEdge(callGraph, methods[0], methods[d]);
+            for (int h = firstHandler; h < firstHelper; h++) {
+                addEdge(callGraph, methods[d], methods[h]);
+            }
+        }
+        for (int h = firstHandler; h < firstHelper; h++) {
+            for (int i = 0; i < callees; i++) {
+                addEdge(callGraph, methods[h], methods[firstHelper + random.nextInt(handlers)]);
+            }
+        }
+        addEdge(callGraph, methods[firstHelper - 1], methods[methods.length - 1]);
+
+        return new SyntheticCallGraphs(methods, callGraph);
+    }
+
+    /**
+     * Deep library call chains: the root calls the heads of {@code chains} chains of {@code length} methods,
+     * and every {@code crossEvery}-th method of a chain also calls a random method of another chain.
+     * The last method is the end of the last chain.
+     */
+    public static SyntheticCallGraphs libraryChains(int chains, int length, int crossEvery, long seed) {
+        Random random = new Random(seed);
+        SootMethod[] methods = newMethods(1 + chains * length);
+        CallGraph callGraph = new CallGraph();
+
+        for (int c = 0; c < chains; c++) {
+            int head = 1 + c * length;
+            addEdge(callGraph, methods[0], methods[head]);
+            for (int v = head + 1; v < head + length; v++) {
+                addEdge(callGraph, methods[v - 1], methods[v]);
+                if ((v - head) % crossEvery == 0) {
+                    addEdge(callGraph, methods[v], methods[1 + random.nextInt(chains * length)]);
+                }
+            }
+        }
+
+        return new SyntheticCallGraphs(methods, callGraph);
+    }
+
+    static SootMethod[] newMethods(int n) {
+        SootClass klass = new SootClass("Synthetic");
+        SootMethod[] methods = new SootMethod[n];
+        for (int v = 0; v < n; v++) {
+            methods[v] = new SootMethod("m" + v, Collections.<Type>emptyList(), VoidType.v());
+            klass.addMethod(methods[v]);
+        }
+
+        return methods;
+    }
+
+    static void addEdge(CallGraph callGraph, SootMethod src, SootMethod tgt) {
+        callGraph.addEdge(new Edge(src, (Unit) null, tgt, Kind.VIRTUAL));
+    }
+
+    public SootMethod[] getMethods() {
+        return methods;
+    }
+
+    public SootMethod getRoot() {
+        return methods[0];
+    }
+
+    public SootMethod getLast() {
+        return methods[methods.length - 1];
+    }
+
+    public CallGraph getCallGraph() {
+        return callGraph;
+    }
+}
@@ -0,0 +1,51 @@
+package fu.hao.benchmark;
+
+import fu.hao.acteve.instrumentor.DijkstraSP;
+import fu.hao.acteve.instrumentor.MethodUtils;
+import soot.Scene;
+
+/**
+ * Description: Times {@link DijkstraSP} construction and pathTo, and the BFS traversals of {@link MethodUtils},
+ * on the two shapes that dominate real apps: the fan-out of UI callbacks and deep library call chains.
+ * The traversals run on the compact snapshot, whose construction is timed on its own.
+ * Execution: java fu.hao.benchmark.TraversalBenchmark [maxVerticesForDijkstraSP]
+ * DijkstraSP needs time quadratic in V, so it is skipped above maxVerticesForDijkstraSP (default 20000).
+ */
+public class TraversalBenchmark {
+    public static void main(String[] args) throws Exception {
+        int maxVerticesForDijkstraSP = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        run("ui callbacks", SyntheticCallGraphs.uiCallbacks(20, 500, 4, 42), maxVerticesForDijkstraSP);
+        run("ui callbacks", SyntheticCallGraphs.uiCallbacks(50, 5000, 4, 42), maxVerticesForDijkstraSP);
+        run("library chains", SyntheticCallGraphs.libraryChains(50, 200, 10, 42), maxVerticesForDijkstraSP);
+        run("library chains", SyntheticCallGraphs.libraryChains(100, 1000, 10, 42), maxVerticesForDijkstraSP);
+    }
+
+    private static void run(String shape, final SyntheticCallGraphs graph, int maxVerticesForDijkstraSP)
+            throws Exception {
+        Scene.v().setCallGraph(graph.getCallGraph());
+        MethodUtils.invalidateCompactCallGraph();
+        String size = shape + " " + graph.getMethods().length + " V / " + graph.getCallGraph().size() + " E";
+
+        Bench.measure("compact snapshot, " + size, 1, 5, () -> {
+            MethodUtils.invalidateCompactCallGraph();
+            MethodUtils.getCompactCallGraph();
+        });
+        Bench.measure("getCalleesOf root, " + size, 3, 11, () -> MethodUtils.getCalleesOf(graph.getRoot()));
+        Bench.measure("findTransitiveCalleesOf root, " + size, 3, 11,
+                () -> MethodUtils.findTransitiveCalleesOf(graph.getRoot()));
+        Bench.measure("findTransitiveCallersOf last, " + size, 3, 11,
+                () -> MethodUtils.findTransitiveCallersOf(graph.getLast()));
+        Bench.measure("findSubCGIn last, " + size, 3, 11, () -> MethodUtils.findSubCGIn(graph.getLast()));
+
+        if (graph.getMethods().length <= maxVerticesForDijkstraSP) {
+            Bench.measure("DijkstraSP construction, " + size, 1, 3,
+                    () -> new DijkstraSP(graph.getCallGraph(), graph.getRoot()));
+            Bench.measure("DijkstraSP pathTo last, " + size, 1, 3,
+                    () -> new DijkstraSP(graph.getCallGraph(), graph.getRoot()),
+                    sp -> sp.pathTo(graph.getLast()));
+        } else {
+            System.out.println("DijkstraSP " + size + " skipped (quadratic in V)");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package fu.hao.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Class: AsyncLogAppender
+ * Description: Appends log lines to one file that stays open for the lifetime of the appender.
+ * <p>
+ * By default, append() puts the line into a bounded ring buffer and returns; a background thread
+ * drains the buffer in batches and writes each batch with one call on the file channel. A full buffer
+ * makes append() wait, so no line is ever dropped. In blocking mode, append() writes the line itself
+ * before returning, for when the file must be in sync with the console, e.g. when debugging a crash.
+ * flush() waits until every line appended so far is written, and close() writes every line appended
+ * before it, then closes the file. A line is either appended before close() or refused, never dropped.
+ */
+public class AsyncLogAppender {
+	private static final int BATCH_BYTES = 1 << 16;
+
+	private final FileChannel channel;
+	private final boolean blocking;
+	private final BlockingQueue<String> buffer;
+	private final Thread drainer;
+	private final ByteBuffer bytes = ByteBuffer.allocate(BATCH_BYTES);
+
+	private final AtomicLong appended = new AtomicLong();   // lines handed to the ring buffer
+	private volatile long written = 0;                      // of those, lines written, only set by the drainer
+	private final Object flushed = new Object();            // notified after every batch
+	private volatile boolean closed = false;
+	// Appenders share it, close() takes it alone, so no line is enqueued while or after it closes
+	private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+	public AsyncLogAppender(File file, int capacity, boolean blocking) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		this.blocking = blocking;
+		if (blocking) {
+			buffer = null;
+			drainer = null;
+			return;
+		}
+
+		buffer = new ArrayBlockingQueue<>(capacity);
+		drainer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "log-appender");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	/**
+	 * Appends {@code line} and a line break.
+	 * @return false if the appender is closed, and the line was not appended
+	 */
+	public boolean append(String line) throws IOException {
+		closing.readLock().lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			if (blocking) {
+				synchronized (this) {
+					write(line);
+					flushBytes();
+				}
+				return true;
+			}
+
+			buffer.put(line);
+			appended.incrementAndGet();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while appending to the log");
+		} finally {
+			closing.readLock().unlock();
+		}
+	}
+
+	private void drain() {
+		List<String> batch = new ArrayList<>();
+		while (!closed || !buffer.isEmpty()) {
+			try {
+				String first = buffer.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				buffer.drainTo(batch);
+
+				try {
+					for (String line : batch) {
+						write(line);
+					}
+					flushBytes();
+				} catch (IOException e) {
+					// Keep draining, the writers must not wait on a broken file forever
+					e.printStackTrace();
+				}
+				synchronized (flushed) {
+					written += batch.size();
+					flushed.notifyAll();
+				}
+				batch.clear();
+			} catch (InterruptedException e) {
+				// Only close() stops the drainer, after the buffer is empty
+			}
+		}
+	}
+
+	// Encode line into the byte buffer, writing the buffer out whenever it fills up
+	private void write(String line) throws IOException {
+		byte[] encoded = (line + "\n").getBytes(StandardCharsets.UTF_8);
+		if (encoded.length > bytes.remaining()) {
+			flushBytes();
+			if (encoded.length > bytes.capacity()) {
+				writeFully(ByteBuffer.wrap(encoded));
+				return;
+			}
+		}
+		bytes.put(encoded);
+	}
+
+	private void flushBytes() throws IOException {
+		bytes.flip();
+		writeFully(bytes);
+		bytes.clear();
+	}
+
+	private void writeFully(ByteBuffer data) throws IOException {
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+	}
+
+	/**
+	 * Waits until every line appended so far has been written to the file.
+	 */
+	public void flush() {
+		if (blocking) {
+			return;
+		}
+		long target = appended.get();
+		boolean interrupted = false;
+		synchronized (flushed) {
+			while (written < target && drainer.isAlive()) {
+				try {
+					flushed.wait(100);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Writes every line appended so far and closes the file. Appending afterwards returns false.
+	 */
+	public void close() throws IOException {
+		// Wait for the appends in progress, and refuse the later ones
+		closing.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		} finally {
+			closing.writeLock().unlock();
+		}
+		if (drainer != null) {
+			// The drainer stops once the buffer is empty
+			// No interrupt, it would close the channel in the middle of a write
+			try {
+				drainer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			channel.close();
+		}
+	}
+}
@@ -26,6 +26,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.function.Supplier;
 
 import javax.management.RuntimeErrorException;
 
@@ -52,8 +53,21 @@ public class Log {
 	public static Writer out = stdout;
 	public static Writer err = stderr;
 	static String fileName;
-	
-	public static void updateFileName() {
+	static AsyncLogAppender appender = null;
+	private static final int APPENDER_CAPACITY = 8192;
+
+	static {
+		// Write out what is still buffered when the JVM exits without Log.exit()
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				closeAppender();
+			}
+		}, "log-shutdown"));
+	}
+
+	public static synchronized void updateFileName() {
+		closeAppender();
 		if (Settings.getOutputDirectory() != null) {
 			File file = new File(Settings.getOutputDirectory());
 			if (!file.exists() || !file.isDirectory()) {
@@ -74,10 +88,16 @@ public class Log {
 		}
 		
 		if (fileName != null && theLevel >= Settings.getLogLevel()) {
-			Writer output;
-			output = new BufferedWriter(new FileWriter(fileName, true));
-			output.append(TAG + " - " + "[" + title + "]: " + msg + "\n");
-			output.close();
+			String line = TAG + " - " + "[" + title + "]: " + msg;
+			AsyncLogAppender output = getAppender();
+			// The appender was closed in the meantime, e.g. by updateFileName(), so the line goes to the next one
+			while (!output.append(line)) {
+				output = getAppender();
+			}
+			if (theLevel >= MODE_ERROR) {
+				// An error is thrown right after, make sure it reaches the file
+				output.flush();
+			}
 
 			return true;
 		}
@@ -85,7 +105,35 @@ public class Log {
 		return false;
 	}
 
+	private static synchronized AsyncLogAppender getAppender() throws IOException {
+		if (appender == null) {
+			appender = new AsyncLogAppender(new File(fileName), APPENDER_CAPACITY, Settings.isLogBlocking());
+		}
+		return appender;
+	}
+
+	private static synchronized void closeAppender() {
+		if (appender != null) {
+			try {
+				appender.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			appender = null;
+		}
+	}
+
+	/**
+	 * Waits until all lines logged so far are in the log file.
+	 */
+	public static synchronized void flush() {
+		if (appender != null) {
+			appender.flush();
+		}
+	}
+
 	public static void exit(int r) {
+		closeAppender();
 		try {
 			Log.out.close();
 			Log.err.close();
@@ -136,12 +184,31 @@ public class Log {
 		}
 	}
 
+	/**
+	 * Whether messages of the given level get logged, so that callers can skip building them.
+	 */
+	public static boolean isEnabled(int level) {
+		return level >= Settings.getLogLevel();
+	}
+
+	// The formats and suppliers below are only evaluated when their level is enabled
+
 	public static void msg(String TAG, String format, Object... args) {
-		msg(TAG, String.format(format, args));
+		if (isEnabled(MODE_MSG)) {
+			msg(TAG, String.format(format, args));
+		}
+	}
+
+	public static void msg(String TAG, Supplier<?> s) {
+		if (isEnabled(MODE_MSG)) {
+			msg(TAG, s.get());
+		}
 	}
 
 	public static void msg(String TAG, Object s) {
-		
+		if (!isEnabled(MODE_MSG)) {
+			return;
+		}
 		try {
 			if (s == null) {
 				log(TAG, MODE_MSG, "MSG", "");
@@ -155,10 +222,21 @@ public class Log {
 	}
 
 	public static void debug(String TAG, String format, Object... args) {
-		debug(TAG, String.format(format, args));
+		if (isEnabled(MODE_DEBUG)) {
+			debug(TAG, String.format(format, args));
+		}
+	}
+
+	public static void debug(String TAG, Supplier<?> s) {
+		if (isEnabled(MODE_DEBUG)) {
+			debug(TAG, String.valueOf(s.get()));
+		}
 	}
 
 	public static void debug(String TAG, Object s) {
+		if (!isEnabled(MODE_DEBUG)) {
+			return;
+		}
 		try {
 			log(TAG, MODE_DEBUG, "DEBUG", s.toString());
 		} catch (IOException e) {
@@ -177,14 +255,27 @@ public class Log {
 	}
 
 	public static void warn(String TAG, String format, Object... args) {
-		warn(TAG, String.format(format, args));
+		if (isEnabled(MODE_WARNING)) {
+			warn(TAG, String.format(format, args));
+		}
 	}
 
 	public static void warn(String TAG, Exception e) {
-		warn(TAG, exceptionToString(e));
+		if (isEnabled(MODE_WARNING)) {
+			warn(TAG, exceptionToString(e));
+		}
+	}
+
+	public static void warn(String TAG, Supplier<?> s) {
+		if (isEnabled(MODE_WARNING)) {
+			warn(TAG, String.valueOf(s.get()));
+		}
 	}
 
 	public static void warn(String TAG, Object s) {
+		if (!isEnabled(MODE_WARNING)) {
+			return;
+		}
 		try {
 			log(TAG, MODE_WARNING, "WARN", s.toString());
 		} catch (IOException e) {
@@ -195,7 +286,9 @@ public class Log {
 
 	// forgive me for these cute names
 	public static void warnwarn(String TAG, String format, Object... args) {
-		warnwarn(TAG, String.format(format, args));
+		if (isEnabled(MODE_SEVERE_WARNING)) {
+			warnwarn(TAG, String.format(format, args));
+		}
 	}
 
 	public static void warnwarn(String TAG, String s) {
@@ -214,11 +307,21 @@ public class Log {
 	}
 
 	public static void err(String TAG, Exception e) {
-		err(TAG, exceptionToString(e));
+		if (isEnabled(MODE_ERROR)) {
+			err(TAG, exceptionToString(e));
+		}
 	}
 
 	public static void err(String TAG, String format, Object... args) {
-		err(TAG, String.format(format, args));
+		if (isEnabled(MODE_ERROR)) {
+			err(TAG, String.format(format, args));
+		}
+	}
+
+	public static void err(String TAG, Supplier<?> msg) {
+		if (isEnabled(MODE_ERROR)) {
+			err(TAG, String.valueOf(msg.get()));
+		}
 	}
 
 	public static void err(String TAG, Object msg) {
@@ -230,7 +333,16 @@ public class Log {
 		}
 	}
 
+	public static void bb(String TAG, Supplier<?> msg) {
+		if (isEnabled(MODE_VERBOSE)) {
+			bb(TAG, String.valueOf(msg.get()));
+		}
+	}
+
 	public static void bb(String TAG, Object msg) {
+		if (!isEnabled(MODE_VERBOSE)) {
+			return;
+		}
 		try {
 			log(TAG, MODE_VERBOSE, "BB", msg.toString());
 		} catch (IOException e) {
@@ -19,7 +19,9 @@
 
 package fu.hao.utils;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -37,10 +39,32 @@ public class Settings {
 	private static String appName = "Unknown";
 	private static String outputDirectory = "output";
 	private static String androidLib = "";
+	private static String targetCatalog = null;
+	private static boolean analysisCacheEnabled = true;
+	private static String cacheDirectory = "cache";
+	private static boolean callGraphSnapshotEnabled = true;
+	private static boolean incrementalEnabled = false;
+	private static boolean demandDriven = false;
+	// Off by default: the paths that leave a library and call back into app code are lost with it on.
+	// Package prefixes left out of the call graph besides the built-in ones, and prefixes kept anyway
+	private static boolean packageFilterEnabled = false;
+	private static List<String> excludedPackages = new ArrayList<String>();
+	private static List<String> includedPackages = new ArrayList<String>();
+	private static boolean logBlocking = false;
+	private static String resultFormat = "jsonl";    // "jsonl", "bin" or null for no result file
+	private static int workers = Runtime.getRuntime().availableProcessors();
+	private static String workerHeap = "4g";
+	private static long appTimeout = 30 * 60 * 1000;
 
 	private static boolean printOutput = true;
 	private static boolean printConstraints = false;
-	private static boolean generateStats = false;
+	private static boolean generateStats = true;
+
+	// Caps of the path enumeration per entry point
+	private static int maxPathsPerEntry = 100;
+	private static int maxPathLength = 30;
+	private static long maxPathSteps = 50000000;
+	private static int threads = Runtime.getRuntime().availableProcessors();
 
 	public static Set<String> getTargetMethods() {
 		return targetMethods;
@@ -86,6 +110,10 @@ public class Settings {
 		return generateStats;
 	}
 
+	public static void setGenerateStats(boolean generateStats) {
+		Settings.generateStats = generateStats;
+	}
+
 	public static void setAndroidLib(String androidLib) {
 		Settings.androidLib = androidLib;
 	}
@@ -94,6 +122,150 @@ public class Settings {
 		return androidLib;
 	}
 
+	public static int getMaxPathsPerEntry() {
+		return maxPathsPerEntry;
+	}
+
+	public static void setMaxPathsPerEntry(int maxPathsPerEntry) {
+		Settings.maxPathsPerEntry = maxPathsPerEntry;
+	}
+
+	public static int getMaxPathLength() {
+		return maxPathLength;
+	}
+
+	public static void setMaxPathLength(int maxPathLength) {
+		Settings.maxPathLength = maxPathLength;
+	}
+
+	public static long getMaxPathSteps() {
+		return maxPathSteps;
+	}
+
+	public static void setMaxPathSteps(long maxPathSteps) {
+		Settings.maxPathSteps = maxPathSteps;
+	}
+
+	public static int getThreads() {
+		return threads;
+	}
+
+	public static void setThreads(int threads) {
+		Settings.threads = threads;
+	}
+
+	public static String getTargetCatalog() {
+		return targetCatalog;
+	}
+
+	public static void setTargetCatalog(String targetCatalog) {
+		Settings.targetCatalog = targetCatalog;
+	}
+
+	public static boolean isAnalysisCacheEnabled() {
+		return analysisCacheEnabled;
+	}
+
+	public static void setAnalysisCacheEnabled(boolean analysisCacheEnabled) {
+		Settings.analysisCacheEnabled = analysisCacheEnabled;
+	}
+
+	public static String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public static void setCacheDirectory(String cacheDirectory) {
+		Settings.cacheDirectory = cacheDirectory;
+	}
+
+	public static boolean isCallGraphSnapshotEnabled() {
+		return callGraphSnapshotEnabled;
+	}
+
+	public static void setCallGraphSnapshotEnabled(boolean callGraphSnapshotEnabled) {
+		Settings.callGraphSnapshotEnabled = callGraphSnapshotEnabled;
+	}
+
+	public static boolean isIncrementalEnabled() {
+		return incrementalEnabled;
+	}
+
+	public static void setIncrementalEnabled(boolean incrementalEnabled) {
+		Settings.incrementalEnabled = incrementalEnabled;
+	}
+
+	public static boolean isDemandDriven() {
+		return demandDriven;
+	}
+
+	public static void setDemandDriven(boolean demandDriven) {
+		Settings.demandDriven = demandDriven;
+	}
+
+	public static boolean isPackageFilterEnabled() {
+		return packageFilterEnabled;
+	}
+
+	public static void setPackageFilterEnabled(boolean packageFilterEnabled) {
+		Settings.packageFilterEnabled = packageFilterEnabled;
+	}
+
+	public static List<String> getExcludedPackages() {
+		return excludedPackages;
+	}
+
+	public static void setExcludedPackages(List<String> excludedPackages) {
+		Settings.excludedPackages = excludedPackages;
+	}
+
+	public static List<String> getIncludedPackages() {
+		return includedPackages;
+	}
+
+	public static void setIncludedPackages(List<String> includedPackages) {
+		Settings.includedPackages = includedPackages;
+	}
+
+	public static boolean isLogBlocking() {
+		return logBlocking;
+	}
+
+	public static void setLogBlocking(boolean logBlocking) {
+		Settings.logBlocking = logBlocking;
+	}
+
+	public static String getResultFormat() {
+		return resultFormat;
+	}
+
+	public static void setResultFormat(String resultFormat) {
+		Settings.resultFormat = resultFormat;
+	}
+
+	public static int getWorkers() {
+		return workers;
+	}
+
+	public static void setWorkers(int workers) {
+		Settings.workers = workers;
+	}
+
+	public static String getWorkerHeap() {
+		return workerHeap;
+	}
+
+	public static void setWorkerHeap(String workerHeap) {
+		Settings.workerHeap = workerHeap;
+	}
+
+	public static long getAppTimeout() {
+		return appTimeout;
+	}
+
+	public static void setAppTimeout(long appTimeout) {
+		Settings.appTimeout = appTimeout;
+	}
+
 	private enum TargetType {
 		METHODS,
 		NATIVE,
@@ -1,65 +1,259 @@
 package fu.hao.utils;
 
 
-import java.util.Date;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Class: Statistics
- * Description:
+ * Description: Time, memory and size metrics of the analysis of one app, written as a JSON report.
+ * <p>
+ * Each {@link Phase} is timed with {@code System.nanoTime} between start() and end(); a phase run more
+ * than once, e.g. because Soot is set up in two steps, adds up. Per phase, the bytes allocated by the
+ * thread that started it are taken from the JVM's per-thread allocation counters, and helper threads
+ * add theirs with addAllocatedBytes(). The heap high-water mark of a phase is the sum of the peak usages
+ * of the heap pools, whose peaks are reset when it starts; the peak of the whole analysis keeps what they
+ * reached before. Counts such as the numbers of call graph
+ * nodes and edges are set by name. Nothing is recorded unless {@code Settings.getGenerateStats()}.
  * Authors: Hao Fu(haofu@ucdavis.edu)
  * Date: 7/14/2016 6:00 PM
  */
 public class Statistics {
-    private static Date startTime = null;
-    private static Date callGraphStartTime = null;
-    private static Date callGraphEndTime = null;
-    private static Date constraintStartTime = null;
-    private static Date constraintEndTime = null;
+    public enum Phase {
+        ENTRY_POINTS("entryPoints"),
+        CLASS_LOADING("classLoading"),
+        CALL_GRAPH("callGraph"),
+        TARGETS("targets"),
+        PATH_SEARCH("pathSearch"),
+        MANIFEST("manifest");
 
-    private static long numberOfNodes = 0;
-    private static long numberOfEdges = 0;
+        private final String key;
 
-    public static void startAnalysis() {
-        if (Settings.getGenerateStats()) {
-            startTime = new Date();
+        Phase(String key) {
+            this.key = key;
         }
     }
 
-    public static void startCallGraph() {
-        if (Settings.getGenerateStats()) {
-            callGraphStartTime = new Date();
+    private static class PhaseStats {
+        long nanos = 0;
+        long allocatedBytes = 0;
+        long heapPeakBytes = 0;
+        int runs = 0;
+
+        // The run in progress
+        Thread owner = null;
+        long startNanos;
+        long startAllocatedBytes;
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static String app = null;
+    private static long startTime = 0;
+    private static long heapPeakBytes = 0;
+    private static final Map<Phase, PhaseStats> phases = new EnumMap<>(Phase.class);
+    private static final Map<String, Long> counts = new LinkedHashMap<>();
+
+    /**
+     * Forgets everything recorded so far and starts the clock for [app].
+     */
+    public static synchronized void startAnalysis(String app) {
+        if (!Settings.getGenerateStats()) {
+            return;
+        }
+        Statistics.app = app;
+        startTime = System.nanoTime();
+        phases.clear();
+        counts.clear();
+        resetHeapPeaks();
+        heapPeakBytes = 0;
+    }
+
+    public static synchronized void start(Phase phase) {
+        if (!Settings.getGenerateStats()) {
+            return;
+        }
+        PhaseStats stats = phases.get(phase);
+        if (stats == null) {
+            stats = new PhaseStats();
+            phases.put(phase, stats);
         }
+        resetHeapPeaks();
+        stats.owner = Thread.currentThread();
+        stats.startAllocatedBytes = allocatedBytes();
+        stats.startNanos = System.nanoTime();
     }
 
-    public static void endCallGraph() {
+    public static synchronized void end(Phase phase) {
+        if (!Settings.getGenerateStats()) {
+            return;
+        }
+        long now = System.nanoTime();
+        PhaseStats stats = phases.get(phase);
+        if (stats == null || stats.owner == null) {
+            return;
+        }
+        stats.nanos += now - stats.startNanos;
+        if (stats.startAllocatedBytes >= 0) {
+            stats.allocatedBytes += allocatedBytes() - stats.startAllocatedBytes;
+        }
+        long peak = heapPeak();
+        stats.heapPeakBytes = Math.max(stats.heapPeakBytes, peak);
+        heapPeakBytes = Math.max(heapPeakBytes, peak);
+        stats.runs++;
+        stats.owner = null;
+    }
+
+    /**
+     * Adds the allocation of a helper thread, e.g. a path search task, to [phase]. The thread that
+     * started the phase is counted by end(), so its own calls are ignored.
+     */
+    public static synchronized void addAllocatedBytes(Phase phase, long bytes) {
+        if (!Settings.getGenerateStats() || bytes <= 0) {
+            return;
+        }
+        PhaseStats stats = phases.get(phase);
+        if (stats != null && stats.owner != Thread.currentThread()) {
+            stats.allocatedBytes += bytes;
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM does not tell.
+     */
+    public static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Resets the peaks of the heap pools, after adding what they reached to the peak of the analysis.
+     */
+    private static void resetHeapPeaks() {
+        heapPeakBytes = Math.max(heapPeakBytes, heapPeak());
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long heapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public static synchronized void setCount(String name, long value) {
         if (Settings.getGenerateStats()) {
-            callGraphEndTime = new Date();
+            counts.put(name, value);
         }
     }
 
     public static void setNumberOfNodes(long numberOfNodes) {
-        Statistics.numberOfNodes = numberOfNodes;
+        setCount("nodes", numberOfNodes);
     }
 
     public static void setNumberOfEdges(long numberOfEdges) {
-        Statistics.numberOfEdges = numberOfEdges;
+        setCount("edges", numberOfEdges);
     }
 
-    public static void startConstraintAnalysis() {
-        if (Settings.getGenerateStats()) {
-            constraintStartTime = new Date();
-        }
+    /**
+     * Returns the count set as [name], or -1 if it is not set.
+     */
+    public static synchronized long getCount(String name) {
+        Long count = counts.get(name);
+        return count != null ? count : -1;
     }
 
-    public static void endConstraintAnalysis() {
-        if (Settings.getGenerateStats()) {
-            constraintEndTime = new Date();
+    /**
+     * Returns the milliseconds spent in [phase] so far, 0 if it did not run.
+     */
+    public static synchronized double getMillis(Phase phase) {
+        PhaseStats stats = phases.get(phase);
+        return stats != null ? stats.nanos / 1e6 : 0;
+    }
+
+    public static synchronized long getHeapPeakBytes() {
+        return Math.max(heapPeakBytes, heapPeak());
+    }
+
+    /**
+     * Method: report
+     * Description: The metrics recorded since startAnalysis() as one line of JSON, e.g.
+     * {"app":"a.apk","complete":true,"millis":1234.5,"heapPeakBytes":1048576,
+     * "phases":{"callGraph":{"millis":700.1,"runs":1,"allocatedBytes":524288,"heapPeakBytes":1048576},...},
+     * "counts":{"nodes":1000,"edges":5000,...}}. allocatedBytes is -1 where the JVM does not count them.
+     * @param complete whether the analysis got to the end
+     */
+    public static synchronized String report(boolean complete) {
+        StringBuilder json = new StringBuilder("{\"app\":").append(quote(app))
+                .append(",\"complete\":").append(complete)
+                .append(",\"millis\":").append(millis(System.nanoTime() - startTime))
+                .append(",\"heapPeakBytes\":").append(Math.max(heapPeakBytes, heapPeak()))
+                .append(",\"phases\":{");
+        String separator = "";
+        for (Map.Entry<Phase, PhaseStats> entry : phases.entrySet()) {
+            PhaseStats stats = entry.getValue();
+            json.append(separator).append(quote(entry.getKey().key))
+                    .append(":{\"millis\":").append(millis(stats.nanos))
+                    .append(",\"runs\":").append(stats.runs)
+                    .append(",\"allocatedBytes\":").append(stats.startAllocatedBytes >= 0 ? stats.allocatedBytes : -1)
+                    .append(",\"heapPeakBytes\":").append(stats.heapPeakBytes).append('}');
+            separator = ",";
         }
+        json.append("},\"counts\":{");
+        separator = "";
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            json.append(separator).append(quote(entry.getKey())).append(':').append(entry.getValue());
+            separator = ",";
+        }
+        return json.append("}}").toString();
     }
 
+    /**
+     * Method: writeReport
+     * Description: Write report([complete]) to [file], if statistics are enabled.
+     */
+    public static void writeReport(File file, boolean complete) throws IOException {
+        if (!Settings.getGenerateStats()) {
+            return;
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(report(complete));
+            out.write('\n');
+        }
+    }
 
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
 
+    private static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
 }